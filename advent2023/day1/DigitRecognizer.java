@@ -0,0 +1,349 @@
+package advent2023.day1;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The DigitRecognizer class finds the first and last digit in a line of text, where a digit is either written as a
+ * digit character ("7") or spelled out as one of a configurable set of words ("seven", "sieben", "sept", ...). All the
+ * tokens are compiled into two Aho-Corasick automata over UTF-8 bytes when the recognizer is created: one that reads a
+ * line forwards to find the first digit, and one built from the reversed tokens that reads a line backwards to find the
+ * last digit. Scanning a line is then a single pass in each direction that allocates nothing and costs one table lookup
+ * per byte, however many words there are.
+ * <p>
+ * The first digit is the token that starts earliest in the line, and the last digit is the token that starts latest.
+ * Tokens may overlap or contain one another: in "eightwo" the first digit is 8 and the last digit is 2, and if both
+ * "tres" and "trese" were words, "trese" would win where both start at the same place. A recognizer is immutable and
+ * can be shared between threads.
+ */
+public final class DigitRecognizer {
+
+    /**
+     * Recognizes the digit characters 0 to 9 and the English words "one" to "nine".
+     */
+    public static final DigitRecognizer ENGLISH = compile(Map.of(
+            "one", 1, "two", 2, "three", 3, "four", 4, "five", 5,
+            "six", 6, "seven", 7, "eight", 8, "nine", 9));
+
+    /**
+     * Returned by firstDigit() and lastDigit() when a line contains no digit.
+     */
+    public static final int NO_DIGIT = -1;
+
+    private final Automaton forward;
+    private final Automaton backward;
+    // length in bytes of the longest token
+    private final int maxTokenLength;
+    // whether a token can end inside a longer token, in which case the first match found by the forward scan may not
+    // be the one that starts earliest
+    private final boolean tokensNest;
+
+    private DigitRecognizer(Map<String, Integer> vocabulary) {
+        Map<String, Integer> tokenMap = new LinkedHashMap<>();
+        for (int digit = 0; digit <= 9; digit++) {
+            tokenMap.put(String.valueOf(digit), digit);
+        }
+        for (Map.Entry<String, Integer> entry : vocabulary.entrySet()) {
+            String word = entry.getKey();
+            int digit = entry.getValue();
+            if (word.isEmpty()) {
+                throw new IllegalArgumentException("Words must not be empty");
+            }
+            if (digit < 0 || digit > 9) {
+                throw new IllegalArgumentException("Digit for \"" + word + "\" must be between 0 and 9: " + digit);
+            }
+            Integer previous = tokenMap.put(word, digit);
+            if (previous != null && previous != digit) {
+                throw new IllegalArgumentException("\"" + word + "\" is mapped to both " + previous + " and " + digit);
+            }
+        }
+
+        ArrayList<byte[]> tokens = new ArrayList<>();
+        ArrayList<byte[]> reversedTokens = new ArrayList<>();
+        ArrayList<Integer> tokenDigits = new ArrayList<>();
+        int longest = 0;
+        for (Map.Entry<String, Integer> entry : tokenMap.entrySet()) {
+            byte[] token = entry.getKey().getBytes(StandardCharsets.UTF_8);
+            byte[] reversed = new byte[token.length];
+            for (int i = 0; i < token.length; i++) {
+                reversed[i] = token[token.length - 1 - i];
+            }
+            tokens.add(token);
+            reversedTokens.add(reversed);
+            tokenDigits.add(entry.getValue());
+            longest = Math.max(token.length, longest);
+        }
+
+        forward = new Automaton(tokens, tokenDigits);
+        backward = new Automaton(reversedTokens, tokenDigits);
+        maxTokenLength = longest;
+
+        boolean nested = false;
+        for (byte[] token : tokens) {
+            int state = 0;
+            for (int i = 0; i < token.length - 1; i++) {
+                state = forward.next(state, token[i] & 0xFF);
+                nested |= forward.digits[state] >= 0;
+            }
+        }
+        tokensNest = nested;
+    }
+
+    /**
+     * Compiles a recognizer for the digit characters 0 to 9 and the given words.
+     *
+     * @param vocabulary The words to recognize, each mapped to the digit it spells. Words may use any characters.
+     * @return The compiled recognizer.
+     * @throws IllegalArgumentException If a word is empty, a digit is outside 0 to 9, or a word is mapped to a
+     *                                  different digit than the digit character it equals.
+     */
+    public static DigitRecognizer compile(Map<String, Integer> vocabulary) {
+        return new DigitRecognizer(vocabulary);
+    }
+
+    /**
+     * Finds the first digit in a line of text.
+     *
+     * @param line The line to search.
+     * @return The value of the first digit, or NO_DIGIT if there is none.
+     */
+    public int firstDigit(CharSequence line) {
+        int state = 0;
+        int position = -1;
+        int bestStart = Integer.MAX_VALUE;
+        int bestDigit = NO_DIGIT;
+
+        for (int i = 0; i < line.length(); ) {
+            int codePoint = line.charAt(i++);
+            if (Character.isHighSurrogate((char) codePoint) && i < line.length()
+                    && Character.isLowSurrogate(line.charAt(i))) {
+                codePoint = Character.toCodePoint((char) codePoint, line.charAt(i++));
+            }
+            int byteCount = utf8Length(codePoint);
+            for (int k = 0; k < byteCount; k++) {
+                state = forward.next(state, utf8Byte(codePoint, byteCount, k));
+                position++;
+                int digit = forward.digits[state];
+                if (digit >= 0) {
+                    int start = position - forward.lengths[state] + 1;
+                    // a match that starts where the best one does is longer, because it ends later
+                    if (start <= bestStart) {
+                        if (!tokensNest) {
+                            return digit;
+                        }
+                        bestStart = start;
+                        bestDigit = digit;
+                    }
+                }
+                if (bestDigit != NO_DIGIT && position + 2 - maxTokenLength > bestStart) {
+                    return bestDigit;
+                }
+            }
+        }
+        return bestDigit;
+    }
+
+    /**
+     * Finds the last digit in a line of text.
+     *
+     * @param line The line to search.
+     * @return The value of the last digit, or NO_DIGIT if there is none.
+     */
+    public int lastDigit(CharSequence line) {
+        int state = 0;
+        for (int i = line.length() - 1; i >= 0; ) {
+            int codePoint = line.charAt(i--);
+            if (Character.isLowSurrogate((char) codePoint) && i >= 0 && Character.isHighSurrogate(line.charAt(i))) {
+                codePoint = Character.toCodePoint(line.charAt(i--), (char) codePoint);
+            }
+            int byteCount = utf8Length(codePoint);
+            for (int k = byteCount - 1; k >= 0; k--) {
+                state = backward.next(state, utf8Byte(codePoint, byteCount, k));
+                // every token found here starts at this byte, and the scan visits the latest starts first
+                if (backward.digits[state] >= 0) {
+                    return backward.digits[state];
+                }
+            }
+        }
+        return NO_DIGIT;
+    }
+
+    /**
+     * Finds the first digit in a line of UTF-8 text held in a buffer.
+     *
+     * @param buffer The buffer holding the line.
+     * @param offset The position of the first byte of the line in the buffer.
+     * @param length The number of bytes in the line.
+     * @return The value of the first digit, or NO_DIGIT if there is none.
+     */
+    public int firstDigit(ByteBuffer buffer, int offset, int length) {
+        int state = 0;
+        int bestStart = Integer.MAX_VALUE;
+        int bestDigit = NO_DIGIT;
+
+        for (int position = offset; position < offset + length; position++) {
+            state = forward.next(state, buffer.get(position) & 0xFF);
+            int digit = forward.digits[state];
+            if (digit >= 0) {
+                int start = position - forward.lengths[state] + 1;
+                if (start <= bestStart) {
+                    if (!tokensNest) {
+                        return digit;
+                    }
+                    bestStart = start;
+                    bestDigit = digit;
+                }
+            }
+            if (bestDigit != NO_DIGIT && position + 2 - maxTokenLength > bestStart) {
+                return bestDigit;
+            }
+        }
+        return bestDigit;
+    }
+
+    /**
+     * Finds the last digit in a line of UTF-8 text held in a buffer.
+     *
+     * @param buffer The buffer holding the line.
+     * @param offset The position of the first byte of the line in the buffer.
+     * @param length The number of bytes in the line.
+     * @return The value of the last digit, or NO_DIGIT if there is none.
+     */
+    public int lastDigit(ByteBuffer buffer, int offset, int length) {
+        int state = 0;
+        for (int i = offset + length - 1; i >= offset; i--) {
+            state = backward.next(state, buffer.get(i) & 0xFF);
+            if (backward.digits[state] >= 0) {
+                return backward.digits[state];
+            }
+        }
+        return NO_DIGIT;
+    }
+
+    private static int utf8Length(int codePoint) {
+        if (codePoint < 0x80) {
+            return 1;
+        } else if (codePoint < 0x800) {
+            return 2;
+        } else if (codePoint < 0x10000) {
+            return 3;
+        }
+        return 4;
+    }
+
+    /**
+     * @return Byte k of the byteCount-byte UTF-8 encoding of a code point.
+     */
+    private static int utf8Byte(int codePoint, int byteCount, int k) {
+        if (byteCount == 1) {
+            return codePoint;
+        }
+        int shift = 6 * (byteCount - 1 - k);
+        if (k == 0) {
+            // lead byte: 110xxxxx, 1110xxxx or 11110xxx
+            return ((0xF0 << (4 - byteCount)) & 0xFF) | (codePoint >> shift);
+        }
+        return 0x80 | ((codePoint >> shift) & 0x3F);
+    }
+
+    /**
+     * An Aho-Corasick automaton over bytes, stored as a complete transition table so that each input byte costs a
+     * single array lookup. Bytes that appear in no token share one byte class, which keeps the table small.
+     */
+    private static final class Automaton {
+        private final int[] byteClasses = new int[256];
+        private final int classCount;
+        private final int[] transitions;
+        // the digit and byte length of the longest token that ends at each state, or -1 if no token ends there
+        private final int[] digits;
+        private final int[] lengths;
+
+        Automaton(ArrayList<byte[]> tokens, ArrayList<Integer> tokenDigits) {
+            int classes = 1;
+            for (byte[] token : tokens) {
+                for (byte b : token) {
+                    if (byteClasses[b & 0xFF] == 0) {
+                        byteClasses[b & 0xFF] = classes++;
+                    }
+                }
+            }
+            classCount = classes;
+
+            // build the trie, with -1 marking a missing child
+            ArrayList<int[]> children = new ArrayList<>();
+            ArrayList<Integer> stateDigits = new ArrayList<>();
+            ArrayList<Integer> depths = new ArrayList<>();
+            children.add(newChildren());
+            stateDigits.add(-1);
+            depths.add(0);
+            for (int t = 0; t < tokens.size(); t++) {
+                int state = 0;
+                for (byte b : tokens.get(t)) {
+                    int byteClass = byteClasses[b & 0xFF];
+                    if (children.get(state)[byteClass] < 0) {
+                        children.get(state)[byteClass] = children.size();
+                        children.add(newChildren());
+                        stateDigits.add(-1);
+                        depths.add(depths.get(state) + 1);
+                    }
+                    state = children.get(state)[byteClass];
+                }
+                stateDigits.set(state, tokenDigits.get(t));
+            }
+
+            // turn the trie into a complete transition table, following failure links breadth first
+            int stateCount = children.size();
+            transitions = new int[stateCount * classCount];
+            digits = new int[stateCount];
+            lengths = new int[stateCount];
+            int[] failure = new int[stateCount];
+            ArrayDeque<Integer> queue = new ArrayDeque<>();
+
+            for (int c = 0; c < classCount; c++) {
+                int child = children.get(0)[c];
+                transitions[c] = Math.max(child, 0);
+                if (child > 0) {
+                    queue.add(child);
+                }
+            }
+            digits[0] = -1;
+            while (!queue.isEmpty()) {
+                int state = queue.poll();
+                // a state with no token of its own still matches the longest token that is a suffix of it
+                if (stateDigits.get(state) >= 0) {
+                    digits[state] = stateDigits.get(state);
+                    lengths[state] = depths.get(state);
+                } else {
+                    digits[state] = digits[failure[state]];
+                    lengths[state] = lengths[failure[state]];
+                }
+                for (int c = 0; c < classCount; c++) {
+                    int child = children.get(state)[c];
+                    int fallback = transitions[failure[state] * classCount + c];
+                    if (child < 0) {
+                        transitions[state * classCount + c] = fallback;
+                    } else {
+                        transitions[state * classCount + c] = child;
+                        failure[child] = fallback;
+                        queue.add(child);
+                    }
+                }
+            }
+        }
+
+        private int[] newChildren() {
+            int[] row = new int[classCount];
+            Arrays.fill(row, -1);
+            return row;
+        }
+
+        int next(int state, int symbol) {
+            return transitions[state * classCount + byteClasses[symbol]];
+        }
+    }
+}
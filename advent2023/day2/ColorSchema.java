@@ -0,0 +1,95 @@
+package advent2023.day2;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * The ColorSchema class gives each cube color seen in a game log a dense slot number, in the order the colors are first
+ * seen. Colors are looked up by the raw bytes of their name, so the parser never has to create a String for a color it
+ * has seen before. Logs have a handful of colors, so lookup is a linear scan that compares lengths and first bytes
+ * before comparing whole names.
+ */
+final class ColorSchema {
+
+    private byte[][] names = new byte[8][];
+    private String[] displayNames = new String[8];
+    private int size;
+
+    /**
+     * Finds the slot of a color, adding the color to the schema if it is new.
+     *
+     * @param buffer The buffer holding the color name.
+     * @param offset The position of the first byte of the name in the buffer.
+     * @param length The number of bytes in the name.
+     * @return The slot of the color.
+     */
+    int intern(ByteBuffer buffer, int offset, int length) {
+        int slot = slotOf(buffer, offset, length);
+        if (slot >= 0) {
+            return slot;
+        }
+        byte[] name = new byte[length];
+        buffer.get(offset, name);
+        if (size == names.length) {
+            names = Arrays.copyOf(names, size * 2);
+            displayNames = Arrays.copyOf(displayNames, size * 2);
+        }
+        names[size] = name;
+        displayNames[size] = new String(name, StandardCharsets.UTF_8);
+        return size++;
+    }
+
+    /**
+     * @return The slot of a color given as bytes, or -1 if the color is not in the schema.
+     */
+    int slotOf(ByteBuffer buffer, int offset, int length) {
+        for (int slot = 0; slot < size; slot++) {
+            byte[] name = names[slot];
+            if (name.length != length || (length > 0 && name[0] != buffer.get(offset))) {
+                continue;
+            }
+            int i = 1;
+            while (i < length && name[i] == buffer.get(offset + i)) {
+                i++;
+            }
+            if (i >= length) {
+                return slot;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return The slot of a color given by name, or -1 if the color is not in the schema.
+     */
+    int slotOf(String color) {
+        for (int slot = 0; slot < size; slot++) {
+            if (displayNames[slot].equals(color)) {
+                return slot;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return The name of the color in a slot.
+     */
+    String name(int slot) {
+        return displayNames[slot];
+    }
+
+    /**
+     * @return The bytes of the name of the color in a slot. The array is not copied, so it must not be changed.
+     */
+    byte[] nameBytes(int slot) {
+        return names[slot];
+    }
+
+    /**
+     * @return The number of colors in the schema.
+     */
+    int size() {
+        return size;
+    }
+}
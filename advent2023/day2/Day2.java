@@ -1,203 +1,328 @@
 package advent2023.day2;
 
-import java.io.*;
+import advent2023.utilities.FileOperations;
+import advent2023.utilities.MappedLineReader;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 /**
  * The Day2 class represents a game with various rounds and colors.
  * It provides methods to process game data from a text file and calculate various game statistics.
- * The class maintains a gamesMap where each game ID is mapped to another HashMap.
- * The inner HashMap maps color names to the maximum count of each color across all rounds.
- * The class also calculates and stores the sum of game IDs for all possible games that can be played based on the
+ * Games may use any set of colors, which is found while parsing. The class keeps the maximum count of each color
+ * across all rounds of each game in a GameStore, which gives each color a dense slot and holds the counts in a flat
+ * int matrix with a row per game, rather than in a map per game.
+ * The class also keeps the sum of game IDs for all possible games that can be played based on the
  * maximum available cubes of each color,
- * and the sum of the products of the minimum required cubes of each color for each game.
+ * and the sum of the products of the minimum required cubes of each color for each game. Every color a game uses
+ * counts toward its power, not only red, green and blue, and a color the game does not use counts as 1.
+ * Both sums are updated as records are read, so a log that is still growing can be followed with follow() and
+ * refresh(), which only read the lines added since the last read. A whole log can also be parsed on several threads,
+ * one chunk of the file each, and the records are then added in file order.
  */
 public class Day2 {
 
-    private final HashMap<Integer, HashMap<String, Integer>> gamesMap = new HashMap<>();
-    private final int sumOfPossibleGames;
+    private final File gameFile;
+    private final Map<String, Integer> cubeStock;
+    private final DuplicateGamePolicy duplicatePolicy;
+    // true for a log opened with follow(), which only reads complete lines and so can be refreshed
+    private final boolean following;
+    private final GameStore games = new GameStore();
+    // holds the line being read, until it has been added to the store
+    private final ParsedGameLog lineLog = new ParsedGameLog();
+    // maximum count of each color slot in the record being added
+    private int[] lineMaxima = new int[8];
+    // cubeStock by color slot, extended as new colors are seen
+    private int[] stockBySlot = new int[0];
+    // byte position in the file up to which records have been read
+    private long consumedBytes;
+
+    private long sumOfPossibleGames;
 
-    private final int totalGamePower;
+    private long totalGamePower;
 
-    public Day2(HashMap<String, Integer> cubeStock, File gameFile) {
-        gameListToGameMap(fileToList(gameFile));
-        this.totalGamePower = calculateGamePower(this.gamesMap);
-        this.sumOfPossibleGames = getPossibleGameSum(this.gamesMap, cubeStock);
+    /**
+     * Reads a whole game log, including a last line that has no line ending. When a game ID appears more than once,
+     * the first record is kept. The log is read once; use follow() for a log that is still being written to.
+     *
+     * @param cubeStock The number of available cubes of each color, used for getSumOfPossibleGames().
+     * @param gameFile  The game log to read.
+     * @throws IOException If the file cannot be read.
+     */
+    public Day2(HashMap<String, Integer> cubeStock, File gameFile) throws IOException {
+        this(cubeStock, gameFile, DuplicateGamePolicy.KEEP_FIRST, false);
+        readNewRecords(true);
     }
 
     /**
-     * Method that takes an ArrayList of Strings, where each String represents a line from a game file,
-     * and adds each game to the gamesMap HashMap.
+     * Reads a whole game log like Day2(HashMap, File), with the file split into chunks that start at line boundaries.
+     * Each chunk is parsed on its own thread into a ParsedGameLog, and the chunks are joined in file order before the
+     * records are added to the store, so the games, colors and sums are the same as reading the file on one thread.
      *
-     * @param gameList The ArrayList of Strings to be processed.
+     * @param cubeStock   The number of available cubes of each color, used for getSumOfPossibleGames().
+     * @param gameFile    The game log to read.
+     * @param parallelism The number of chunks, and worker threads, to split the file into.
+     * @throws IOException If the file cannot be read.
      */
-    private void gameListToGameMap(ArrayList<String> gameList) {
-        for (String line : gameList) {
-            addGameToMap(line);
-        }
+    public Day2(HashMap<String, Integer> cubeStock, File gameFile, int parallelism) throws IOException {
+        this(cubeStock, gameFile, DuplicateGamePolicy.KEEP_FIRST, false);
+        consumedBytes = gameFile.length();
+        addGames(FileOperations.reduceMappedLinesInParallel(gameFile, parallelism, ParsedGameLog::new,
+                ParsedGameLog::parseLine, ParsedGameLog::append));
+    }
+
+    private Day2(Map<String, Integer> cubeStock, File gameFile, DuplicateGamePolicy duplicatePolicy,
+                 boolean following) {
+        this.gameFile = gameFile;
+        this.cubeStock = new HashMap<>(cubeStock);
+        this.duplicatePolicy = duplicatePolicy;
+        this.following = following;
     }
 
     /**
-     * This method reads a text file and returns its content as an ArrayList of Strings, where each String represents a
-     * line in the file.
+     * This method opens a game log that is still being written to. Nothing is read yet: each call to refresh(),
+     * starting with the first, reads the complete lines added since the last one. A record that is halfway through
+     * being written is left for a later call. The sums are kept up to date as records are read, so refresh() only
+     * costs time in proportion to the records added since the last call. Because the factory itself reads nothing, a
+     * rejected duplicate is always reported by refresh(), and the instance can carry on past it.
      *
-     * @param inputFile The File object representing the text file to be read.
-     * @return An ArrayList of Strings, where each String is a line from the input file.
+     * @param cubeStock       The number of available cubes of each color, used for getSumOfPossibleGames().
+     * @param gameFile        The game log to read.
+     * @param duplicatePolicy What to do when a game ID appears more than once.
+     * @return A Day2 holding no games, positioned at the start of the file.
      */
-    private ArrayList<String> fileToList(File inputFile) {
-        ArrayList<String> fileLines = new ArrayList<>();
-
-        try {
-            BufferedReader br = new BufferedReader(new FileReader(inputFile));
-            String line;
-            while ((line = br.readLine()) != null) {
-                fileLines.add(line);
-            }
-        } catch (IOException e) {
-            System.out.println("Error: file not found -> " + e.getMessage());
-        }
-        return fileLines;
+    public static Day2 follow(Map<String, Integer> cubeStock, File gameFile, DuplicateGamePolicy duplicatePolicy) {
+        return new Day2(cubeStock, gameFile, duplicatePolicy, true);
     }
 
     /**
-     * This method takes a string representing a game's details and adds it to the gamesMap HashMap.
-     * The input string should be in the format "Game X: Y color1, Z color2, W color3; ...", where X is the game number,
-     * Y, Z, W are the counts of each color in each round, and color1, color2, color3 are the colors.
-     * The method extracts the game number and the maximum count of each color across all rounds, and stores them in
-     * the gamesMap.
+     * This method reads the complete lines appended to the game log since it was last read, or since the start of the
+     * file on the first call, and updates the games and sums with them. A Day2 is not thread-safe, so refresh() must
+     * not run while another thread reads its results.
      *
-     * @param input The input string representing a game's details.
+     * @return The number of lines read.
+     * @throws IOException              If the file cannot be read, or has become shorter than the part already read.
+     * @throws IllegalStateException    If this Day2 was not created with follow(). The constructor also reads a last
+     *                                  line that has no line ending, which may be a record still being written, so
+     *                                  reading on from there could split that record in two.
+     * @throws IllegalArgumentException If the duplicate policy is REJECT and a game ID appears more than once. The
+     *                                  lines before the duplicate are kept and the duplicate is skipped, so the next
+     *                                  call carries on with the lines after it.
      */
-    private void addGameToMap(String input) {
-        HashMap<String, Integer> colorMap = new HashMap<>();
-
-        // Extract game number
-        Pattern gamePattern = Pattern.compile("Game (\\d+):");
-        Matcher gameMatcher = gamePattern.matcher(input);
-        if (!gameMatcher.find()) {
-            System.out.println("Invalid input format.");
-            return;
+    public int refresh() throws IOException {
+        if (!following) {
+            throw new IllegalStateException("Only a game log opened with follow() can be refreshed");
         }
-        int gameNumber = Integer.parseInt(gameMatcher.group(1));
-
-        // Initialize max counts
-        int maxGreen = 0, maxBlue = 0, maxRed = 0;
-
-        // Split input into segments
-        String[] draws = input.substring(gameMatcher.end()).split(";");
-        for (String draw : draws) {
-            // Process each segment
-            String[] colors = draw.trim().split(",");
-            for (String color : colors) {
-                String[] parts = color.trim().split(" ");
-                int count = Integer.parseInt(parts[0]);
-                switch (parts[1]) {
-                    case "green":
-                        maxGreen = Math.max(maxGreen, count);
-                        break;
-                    case "blue":
-                        maxBlue = Math.max(maxBlue, count);
-                        break;
-                    case "red":
-                        maxRed = Math.max(maxRed, count);
-                        break;
-                }
+        return readNewRecords(false);
+    }
+
+    /**
+     * @return The byte position in the game log up to which records have been read.
+     */
+    public long getConsumedBytes() {
+        return consumedBytes;
+    }
+
+    private int readNewRecords(boolean readUnterminatedLine) throws IOException {
+        int lines = 0;
+        try (MappedLineReader reader = MappedLineReader.open(gameFile, consumedBytes)) {
+            while (reader.nextLine() && (reader.lineTerminated() || readUnterminatedLine)) {
+                // step past the line first, so a rejected duplicate is not read again by the next refresh()
+                consumedBytes = reader.filePosition();
+                lines++;
+                lineLog.clear();
+                lineLog.parseLine(reader.buffer(), reader.lineOffset(), reader.lineLength());
+                addGames(lineLog);
             }
         }
+        return lines;
+    }
 
-        colorMap.put("green", maxGreen);
-        colorMap.put("blue", maxBlue);
-        colorMap.put("red", maxRed);
+    /**
+     * This method adds the records of a parsed log to the game store, in the order they were read. Each record is
+     * first checked against the duplicate policy, and only a record that is kept gives new colors a slot, in the order
+     * they appear on its line, so the colors and games end up exactly as if the lines had been read one by one.
+     *
+     * @param log The parsed records.
+     * @throws IllegalArgumentException If the duplicate policy is REJECT and a game ID appears more than once.
+     */
+    private void addGames(ParsedGameLog log) {
+        // store slot of each of the log's colors, found the first time a kept record uses it
+        int[] storeSlots = new int[log.colorCount()];
+        Arrays.fill(storeSlots, -1);
+        for (int record = 0; record < log.size(); record++) {
+            int gameNumber = log.id(record);
+            // a record the duplicate policy rejects or throws away must not add its colors either
+            int row = games.rowOf(gameNumber);
+            if (row >= 0 && duplicatePolicy == DuplicateGamePolicy.REJECT) {
+                throw new IllegalArgumentException("Game " + gameNumber + " appears more than once");
+            }
+            if (row >= 0 && duplicatePolicy == DuplicateGamePolicy.KEEP_FIRST) {
+                continue;
+            }
 
-        if (!gamesMap.containsKey(gameNumber)) {
-            gamesMap.put(gameNumber, colorMap);
+            Arrays.fill(lineMaxima, 0);
+            for (int pair = log.firstPair(record); pair < log.pairEnd(record); pair++) {
+                int logSlot = log.pairSlot(pair);
+                if (storeSlots[logSlot] < 0) {
+                    byte[] name = log.colorNameBytes(logSlot);
+                    storeSlots[logSlot] = games.colorSlot(ByteBuffer.wrap(name), 0, name.length);
+                }
+                int slot = storeSlots[logSlot];
+                if (slot >= lineMaxima.length) {
+                    lineMaxima = Arrays.copyOf(lineMaxima, Math.max(lineMaxima.length * 2, slot + 1));
+                }
+                lineMaxima[slot] = log.pairCount(pair);
+            }
+            recordGame(gameNumber, row, lineMaxima);
         }
     }
 
     /**
-     * This method checks if a game can be played based on the maximum available cubes of each color.
-     * It takes two HashMaps as input: one representing the game entry with the required number of cubes of each color,
-     * and the other representing the maximum available cubes of each color.
+     * This method stores a parsed game that the duplicate policy keeps, and updates the sums by taking out the old
+     * contribution of a game that changes and adding its new one. Records that are rejected or thrown away never get
+     * here, so that their colors are not added to the store.
      *
-     * @param gameEntry A HashMap representing the game entry with keys as color names and values as the required
-     *                  number of cubes of each color.
-     * @param maxCubes A HashMap representing the maximum available cubes with keys as color names and values as the
-     *                 number of available cubes of each color.
-     * @return A boolean value indicating whether the game can be played. Returns true if the game can be played,
-     * false otherwise.
+     * @param gameNumber The game ID.
+     * @param row        The row already holding this game ID, or a negative number for a new game.
+     * @param maxima     The maximum count of each color in the record, indexed by color slot.
      */
-    private boolean isGamePossible(HashMap<String, Integer> gameEntry, HashMap<String, Integer> maxCubes) {
-        int green = gameEntry.get("green");
-        int red = gameEntry.get("red");
-        int blue = gameEntry.get("blue");
+    private void recordGame(int gameNumber, int row, int[] maxima) {
+        if (stockBySlot.length < games.colorCount()) {
+            extendStock();
+        }
+        if (row < 0) {
+            games.add(gameNumber, maxima);
+            addToSums(games.size() - 1, 1);
+        } else if (duplicatePolicy == DuplicateGamePolicy.KEEP_LAST) {
+            addToSums(row, -1);
+            games.replace(row, maxima);
+            addToSums(row, 1);
+        } else if (duplicatePolicy == DuplicateGamePolicy.MERGE_MAX) {
+            addToSums(row, -1);
+            games.mergeMax(row, maxima);
+            addToSums(row, 1);
+        }
+    }
 
-        int maxGreen = maxCubes.get("green");
-        int maxRed = maxCubes.get("red");
-        int maxBlue = maxCubes.get("blue");
+    private void addToSums(int row, int sign) {
+        totalGamePower += sign * games.power(row);
+        if (games.isPossible(row, stockBySlot)) {
+            sumOfPossibleGames += sign * games.id(row);
+        }
+    }
 
-        return green <= maxGreen && red <= maxRed && blue <= maxBlue;
+    /**
+     * This method adds the stock of newly seen colors to stockBySlot. The games already stored have none of a new
+     * color, so they stay possible unless the stock of that color is negative, in which case the possible-game sum is
+     * worked out again.
+     */
+    private void extendStock() {
+        int known = stockBySlot.length;
+        stockBySlot = stockBySlot(cubeStock);
+        for (int slot = known; slot < stockBySlot.length; slot++) {
+            if (stockBySlot[slot] < 0) {
+                sumOfPossibleGames = games.possibleGameSum(stockBySlot);
+                return;
+            }
+        }
     }
 
     /**
-     * This method calculates the sum of the game IDs for all possible games that can be played based on the maximum
-     * available cubes of each color.
-     * It takes two HashMaps as input: one representing the gamesMap with game IDs as keys and another HashMap as
-     * values (which contains color names as keys and required number of cubes as values), and the other representing
-     * the maximum available cubes of each color.
+     * This method converts a stock of cubes keyed by color name into an array indexed by the color slots of the
+     * game store. Colors that no game uses are ignored, and colors missing from the stock have no cubes.
      *
-     * @param gamesMap A HashMap representing the gamesMap with game IDs as keys and another HashMap as values
-     *                 (which contains color names as keys and required number of cubes as values).
-     * @param maxCubes A HashMap representing the maximum available cubes with keys as color names and values as the
-     *                 number of available cubes of each color.
-     * @return An integer value indicating the sum of the game IDs for all possible games that can be played.
+     * @param maxCubes A Map with keys as color names and values as the number of available cubes of each color.
+     * @return The number of available cubes of each color, indexed by color slot.
      */
-    private int getPossibleGameSum(HashMap<Integer, HashMap<String, Integer>> gamesMap, HashMap<String, Integer> maxCubes) {
-        int sumOfPossibleGameId = 0;
-
-        for (Map.Entry<Integer, HashMap<String, Integer>> game : gamesMap.entrySet()) {
-            if (isGamePossible(game.getValue(), maxCubes)) {
-                sumOfPossibleGameId += game.getKey();
+    private int[] stockBySlot(Map<String, Integer> maxCubes) {
+        int[] stock = new int[games.colorCount()];
+        for (Map.Entry<String, Integer> entry : maxCubes.entrySet()) {
+            int slot = games.colorSlot(entry.getKey());
+            if (slot >= 0 && entry.getValue() != null) {
+                stock[slot] = entry.getValue();
             }
         }
-        return sumOfPossibleGameId;
+        return stock;
     }
 
     /**
-     * This method calculates the sum of the products of the minimum required cubes of each color for each game.
-     * It takes a HashMap as input, which represents the gamesMap with game IDs as keys and another HashMap as values.
-     * The inner HashMap contains color names as keys and required number of cubes as values.
+     * This method calculates the sum of the game IDs for all games that can be played with the given cubes. Unlike
+     * the sum computed in the constructor, it can be called any number of times with different cubes: the games are
+     * indexed on the first call, and later calls do not look at every game again.
      *
-     * @param gamesMap A HashMap representing the gamesMap with game IDs as keys and another HashMap as values
-     *                 (which contains color names as keys and required number of cubes as values).
-     * @return An integer value indicating the sum of the products of the minimum required cubes of each color for each
-     * game.
+     * @param maxCubes A Map with keys as color names and values as the number of available cubes of each color. A
+     *                 color that is missing has no cubes available.
+     * @return A long value indicating the sum of the game IDs for all possible games.
      */
-    private int calculateGamePower(HashMap<Integer, HashMap<String, Integer>> gamesMap) {
-        int sumOfGamePower = 0;
+    public long possibleGameSum(Map<String, Integer> maxCubes) {
+        return games.index().possibleGameSum(stockBySlot(maxCubes));
+    }
 
-        for (Map.Entry<Integer, HashMap<String, Integer>> game : gamesMap.entrySet()) {
-            HashMap<String, Integer> currentGameMap = new HashMap<>(game.getValue());
+    /**
+     * This method counts the games that can be played with the given cubes, using the same index as
+     * possibleGameSum().
+     *
+     * @param maxCubes A Map with keys as color names and values as the number of available cubes of each color. A
+     *                 color that is missing has no cubes available.
+     * @return The number of possible games.
+     */
+    public int countPossible(Map<String, Integer> maxCubes) {
+        return games.index().countPossible(stockBySlot(maxCubes));
+    }
 
-            // set the minimum required value for each block color in the map. If the value is 0, set 1 as the result
-            // will be multiplied and should not affect the outcome.
-            int green = currentGameMap.get("green") == 0 ? 1 : currentGameMap.get("green");
-            int blue = currentGameMap.get("blue") == 0 ? 1 : currentGameMap.get("blue");
-            int red = currentGameMap.get("red") == 0 ? 1 : currentGameMap.get("red");
+    /**
+     * This method calculates the sum of the game IDs for all games that can be played with the given red, green and
+     * blue cubes and no cubes of any other color.
+     *
+     * @param red   The number of red cubes available.
+     * @param green The number of green cubes available.
+     * @param blue  The number of blue cubes available.
+     * @return A long value indicating the sum of the game IDs for all possible games.
+     */
+    public long possibleGameSum(int red, int green, int blue) {
+        return possibleGameSum(Map.of("red", red, "green", green, "blue", blue));
+    }
 
-            sumOfGamePower += green * red * blue;
+    /**
+     * This method counts the games that can be played with the given red, green and blue cubes and no cubes of any
+     * other color.
+     *
+     * @param red   The number of red cubes available.
+     * @param green The number of green cubes available.
+     * @param blue  The number of blue cubes available.
+     * @return The number of possible games.
+     */
+    public int countPossible(int red, int green, int blue) {
+        return countPossible(Map.of("red", red, "green", green, "blue", blue));
+    }
+
+    /**
+     * @return The names of all colors used in the games, in the order they were first seen.
+     */
+    public List<String> getColors() {
+        List<String> colorNames = new ArrayList<>();
+        for (int slot = 0; slot < games.colorCount(); slot++) {
+            colorNames.add(games.colorName(slot));
         }
-        return sumOfGamePower;
+        return colorNames;
     }
 
-    public int getSumOfPossibleGames() {
+    public long getSumOfPossibleGames() {
         return this.sumOfPossibleGames;
     }
 
-    public int getTotalGamePower() {
+    /**
+     * @return The sum over all games of the product of the minimum number of cubes of each color the game uses,
+     * including colors other than red, green and blue.
+     */
+    public long getTotalGamePower() {
         return this.totalGamePower;
     }
 
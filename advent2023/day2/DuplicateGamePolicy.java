@@ -0,0 +1,27 @@
+package advent2023.day2;
+
+/**
+ * What Day2 does when a game log has more than one record with the same game ID.
+ */
+public enum DuplicateGamePolicy {
+
+    /**
+     * Keep the first record of the game and ignore later ones.
+     */
+    KEEP_FIRST,
+
+    /**
+     * Replace the game with each later record, so the last record wins.
+     */
+    KEEP_LAST,
+
+    /**
+     * Combine the records, keeping the largest count of each color seen in any of them.
+     */
+    MERGE_MAX,
+
+    /**
+     * Treat a repeated game ID as invalid input and throw an IllegalArgumentException.
+     */
+    REJECT
+}
@@ -0,0 +1,327 @@
+package advent2023.day2;
+
+import java.util.Arrays;
+
+/**
+ * The GameIndex class answers "which games can be played with this stock of cubes?" for any number of different
+ * stocks, without rescanning every game for each one. A game can be played when, for every color, the maximum number
+ * of cubes of that color it shows is at most the number in stock.
+ * <p>
+ * When the games use few distinct counts per color, which is the usual case, the index is a dense grid over the
+ * distinct counts holding cumulative game counts and ID sums, so a query is one binary search per color and one
+ * lookup. Otherwise the index is an implicit k-d tree over the games: the games are reordered so that every subtree is
+ * a contiguous run split at its middle game, and each subtree records the smallest and largest count of every color
+ * in it and the sum of its IDs. A query counts whole subtrees that fit the stock from those sums, skips subtrees that
+ * cannot fit, and only descends into the ones in between. Instances are immutable and can be shared between threads.
+ */
+final class GameIndex {
+
+    // largest number of grid cells, per count and ID sum, before the index falls back to a k-d tree
+    private static final int GRID_CELL_LIMIT = 1 << 20;
+    // k-d subtrees with at most this many games are scanned rather than split further
+    private static final int LEAF_SIZE = 16;
+
+    private final int colorCount;
+    private final int size;
+
+    // grid: sorted distinct counts of each color, cell strides, and cumulative game counts and ID sums per cell
+    private final int[][] distinctCounts;
+    private final int[] strides;
+    private final long[] cumulativeGames;
+    private final long[] cumulativeIdSums;
+
+    // k-d tree: game IDs and counts of every color in tree order, and for the subtree whose middle game is at each
+    // position, the smallest and largest count of every color and the sum of the IDs
+    private final int[] treeIds;
+    private final int[][] treeCounts;
+    private final int[][] subtreeMinimums;
+    private final int[][] subtreeMaximums;
+    private final long[] subtreeIdSums;
+
+    /**
+     * Builds an index over a set of games.
+     *
+     * @param ids        The game IDs, one per row.
+     * @param counts     The maximum number of cubes of each color in each game, as a flat matrix with a row per game
+     *                   and colorCount values per row.
+     * @param colorCount The number of colors.
+     * @param size       The number of rows to index. The arrays may be longer.
+     */
+    GameIndex(int[] ids, int[] counts, int colorCount, int size) {
+        this.colorCount = colorCount;
+        this.size = size;
+
+        // the index is built one color at a time, so split the matrix into a column per color first
+        int[][] columns = new int[colorCount][size];
+        for (int row = 0; row < size; row++) {
+            for (int c = 0; c < colorCount; c++) {
+                columns[c][row] = counts[row * colorCount + c];
+            }
+        }
+
+        distinctCounts = new int[colorCount][];
+        long cells = 1;
+        for (int c = 0; c < colorCount; c++) {
+            int[] sorted = Arrays.copyOf(columns[c], size);
+            Arrays.sort(sorted);
+            int distinct = 0;
+            for (int i = 0; i < size; i++) {
+                if (distinct == 0 || sorted[i] != sorted[distinct - 1]) {
+                    sorted[distinct++] = sorted[i];
+                }
+            }
+            distinctCounts[c] = Arrays.copyOf(sorted, distinct);
+            cells = Math.min(cells * Math.max(distinct, 1), GRID_CELL_LIMIT + 1L);
+        }
+
+        if (cells <= GRID_CELL_LIMIT) {
+            strides = new int[colorCount];
+            int stride = 1;
+            for (int c = colorCount - 1; c >= 0; c--) {
+                strides[c] = stride;
+                stride *= Math.max(distinctCounts[c].length, 1);
+            }
+            cumulativeGames = new long[(int) cells];
+            cumulativeIdSums = new long[(int) cells];
+            for (int row = 0; row < size; row++) {
+                int cell = 0;
+                for (int c = 0; c < colorCount; c++) {
+                    cell += Arrays.binarySearch(distinctCounts[c], columns[c][row]) * strides[c];
+                }
+                cumulativeGames[cell]++;
+                cumulativeIdSums[cell] += ids[row];
+            }
+            // accumulate along one color at a time, so each cell ends up covering every cell at or below it
+            for (int c = 0; c < colorCount; c++) {
+                int dimension = Math.max(distinctCounts[c].length, 1);
+                for (int cell = 0; cell < cells; cell++) {
+                    if (cell / strides[c] % dimension > 0) {
+                        cumulativeGames[cell] += cumulativeGames[cell - strides[c]];
+                        cumulativeIdSums[cell] += cumulativeIdSums[cell - strides[c]];
+                    }
+                }
+            }
+            treeIds = null;
+            treeCounts = null;
+            subtreeMinimums = null;
+            subtreeMaximums = null;
+            subtreeIdSums = null;
+            return;
+        }
+
+        strides = null;
+        cumulativeGames = null;
+        cumulativeIdSums = null;
+        int[] rows = new int[size];
+        for (int row = 0; row < size; row++) {
+            rows[row] = row;
+        }
+        arrange(rows, columns, 0, size, 0);
+
+        treeIds = new int[size];
+        treeCounts = new int[colorCount][size];
+        subtreeMinimums = new int[colorCount][size];
+        subtreeMaximums = new int[colorCount][size];
+        subtreeIdSums = new long[size];
+        for (int i = 0; i < size; i++) {
+            treeIds[i] = ids[rows[i]];
+            for (int c = 0; c < colorCount; c++) {
+                treeCounts[c][i] = columns[c][rows[i]];
+            }
+        }
+        summarize(0, size);
+    }
+
+    /**
+     * Calculates the sum of the IDs of all games that can be played with the given stock.
+     *
+     * @param stock The number of cubes of each color in stock, in the same color order as the index.
+     * @return The sum of the IDs of the possible games.
+     */
+    long possibleGameSum(int[] stock) {
+        return query(stock, true);
+    }
+
+    /**
+     * Counts the games that can be played with the given stock.
+     *
+     * @param stock The number of cubes of each color in stock, in the same color order as the index.
+     * @return The number of possible games.
+     */
+    int countPossible(int[] stock) {
+        return (int) query(stock, false);
+    }
+
+    private long query(int[] stock, boolean sumIds) {
+        if (stock.length != colorCount) {
+            throw new IllegalArgumentException("Expected a stock for " + colorCount + " colors, got " + stock.length);
+        }
+        if (size == 0) {
+            return 0;
+        }
+        if (cumulativeGames != null) {
+            int cell = 0;
+            for (int c = 0; c < colorCount; c++) {
+                int rank = countAtOrBelow(distinctCounts[c], stock[c]) - 1;
+                if (rank < 0) {
+                    return 0;
+                }
+                cell += rank * strides[c];
+            }
+            return sumIds ? cumulativeIdSums[cell] : cumulativeGames[cell];
+        }
+
+        return queryTree(0, size, stock, sumIds);
+    }
+
+    /**
+     * Answers a query for the subtree made of the games from lo up to (but not including) hi.
+     */
+    private long queryTree(int lo, int hi, int[] stock, boolean sumIds) {
+        if (lo >= hi) {
+            return 0;
+        }
+        int middle = (lo + hi) >>> 1;
+        boolean allFit = true;
+        for (int c = 0; c < colorCount; c++) {
+            if (subtreeMinimums[c][middle] > stock[c]) {
+                return 0;
+            }
+            allFit &= subtreeMaximums[c][middle] <= stock[c];
+        }
+        if (allFit) {
+            return sumIds ? subtreeIdSums[middle] : hi - lo;
+        }
+
+        if (hi - lo <= LEAF_SIZE) {
+            long result = 0;
+            for (int i = lo; i < hi; i++) {
+                boolean possible = true;
+                for (int c = 0; c < colorCount; c++) {
+                    possible &= treeCounts[c][i] <= stock[c];
+                }
+                if (possible) {
+                    result += sumIds ? treeIds[i] : 1;
+                }
+            }
+            return result;
+        }
+        long result = queryTree(lo, middle, stock, sumIds) + queryTree(middle + 1, hi, stock, sumIds);
+        boolean middleFits = true;
+        for (int c = 0; c < colorCount; c++) {
+            middleFits &= treeCounts[c][middle] <= stock[c];
+        }
+        if (middleFits) {
+            result += sumIds ? treeIds[middle] : 1;
+        }
+        return result;
+    }
+
+    /**
+     * Reorders rows from lo up to hi into k-d tree order: the middle row splits the others by the count of one color,
+     * and the halves on either side are arranged the same way using the next color.
+     */
+    private static void arrange(int[] rows, int[][] columns, int lo, int hi, int color) {
+        if (hi - lo <= LEAF_SIZE) {
+            return;
+        }
+        int middle = (lo + hi) >>> 1;
+        select(rows, columns[color], lo, hi, middle);
+        int nextColor = (color + 1) % columns.length;
+        arrange(rows, columns, lo, middle, nextColor);
+        arrange(rows, columns, middle + 1, hi, nextColor);
+    }
+
+    /**
+     * Partially sorts rows from lo up to hi by their value in column, so that the row at position k is the one a full
+     * sort would put there, with no larger values before it and no smaller values after it.
+     */
+    private static void select(int[] rows, int[] column, int lo, int hi, int k) {
+        int left = lo;
+        int right = hi - 1;
+        while (left < right) {
+            int pivot = column[rows[(left + right) >>> 1]];
+            int i = left;
+            int j = right;
+            while (i <= j) {
+                while (column[rows[i]] < pivot) {
+                    i++;
+                }
+                while (column[rows[j]] > pivot) {
+                    j--;
+                }
+                if (i <= j) {
+                    int swap = rows[i];
+                    rows[i++] = rows[j];
+                    rows[j--] = swap;
+                }
+            }
+            if (k <= j) {
+                right = j;
+            } else if (k >= i) {
+                left = i;
+            } else {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Records the smallest and largest counts and the ID sum of the subtree from lo up to hi, and of every subtree
+     * inside it, at the position of each subtree's middle game.
+     */
+    private void summarize(int lo, int hi) {
+        if (lo >= hi) {
+            return;
+        }
+        int middle = (lo + hi) >>> 1;
+        if (hi - lo > LEAF_SIZE) {
+            summarize(lo, middle);
+            summarize(middle + 1, hi);
+        }
+        int leftMiddle = (lo + middle) >>> 1;
+        int rightMiddle = (middle + 1 + hi) >>> 1;
+        for (int c = 0; c < colorCount; c++) {
+            int minimum = treeCounts[c][middle];
+            int maximum = treeCounts[c][middle];
+            if (hi - lo > LEAF_SIZE) {
+                // the children are never empty here, since a split subtree has more than LEAF_SIZE games
+                minimum = Math.min(minimum, Math.min(subtreeMinimums[c][leftMiddle], subtreeMinimums[c][rightMiddle]));
+                maximum = Math.max(maximum, Math.max(subtreeMaximums[c][leftMiddle], subtreeMaximums[c][rightMiddle]));
+            } else {
+                for (int i = lo; i < hi; i++) {
+                    minimum = Math.min(minimum, treeCounts[c][i]);
+                    maximum = Math.max(maximum, treeCounts[c][i]);
+                }
+            }
+            subtreeMinimums[c][middle] = minimum;
+            subtreeMaximums[c][middle] = maximum;
+        }
+        if (hi - lo > LEAF_SIZE) {
+            subtreeIdSums[middle] = treeIds[middle] + subtreeIdSums[leftMiddle] + subtreeIdSums[rightMiddle];
+        } else {
+            long idSum = 0;
+            for (int i = lo; i < hi; i++) {
+                idSum += treeIds[i];
+            }
+            subtreeIdSums[middle] = idSum;
+        }
+    }
+
+    /**
+     * @return The number of values in a sorted array that are at or below the limit.
+     */
+    private static int countAtOrBelow(int[] sorted, int limit) {
+        int low = 0;
+        int high = sorted.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (sorted[mid] <= limit) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+}
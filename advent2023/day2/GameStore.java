@@ -0,0 +1,238 @@
+package advent2023.day2;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * The GameStore class holds the maximum number of cubes of each color seen in each game. Colors are given dense slots
+ * by a ColorSchema as they are first seen, and the counts are kept in one flat int matrix with a row per game and a
+ * column per color slot, next to an int array of game IDs. The arrays grow as games are added, and the matrix is laid
+ * out again with a wider row when a new color appears. A small open-addressing table maps game IDs to rows, so
+ * duplicate IDs can be detected without boxing.
+ * <p>
+ * Compared with a map of maps, a game costs 4 bytes per color plus its ID and its share of the ID table, and the
+ * aggregations below are tight loops over primitive arrays for any number of colors.
+ */
+final class GameStore {
+
+    private static final int INITIAL_CAPACITY = 64;
+
+    private final ColorSchema colors = new ColorSchema();
+    private int[] ids = new int[INITIAL_CAPACITY];
+    // counts[row * colorCount + slot] is the maximum count of the color in that slot in the game in that row
+    private int[] counts = new int[0];
+    private int colorCount;
+    private int size;
+
+    // row + 1 of the game whose ID hashes to each slot, or 0 for an empty slot; kept at most half full
+    private int[] rowSlots = new int[INITIAL_CAPACITY * 2];
+
+    // built on first use and dropped whenever a game or color is added or changed
+    private volatile GameIndex index;
+
+    /**
+     * Finds the slot of a color, adding a column for it if the color is new. Games already in the store have a count
+     * of 0 for a new color.
+     *
+     * @param buffer The buffer holding the color name.
+     * @param offset The position of the first byte of the name in the buffer.
+     * @param length The number of bytes in the name.
+     * @return The slot of the color.
+     */
+    int colorSlot(ByteBuffer buffer, int offset, int length) {
+        int slot = colors.intern(buffer, offset, length);
+        if (slot == colorCount) {
+            int[] widened = new int[ids.length * (colorCount + 1)];
+            for (int row = 0; row < size; row++) {
+                System.arraycopy(counts, row * colorCount, widened, row * (colorCount + 1), colorCount);
+            }
+            counts = widened;
+            colorCount++;
+            index = null;
+        }
+        return slot;
+    }
+
+    /**
+     * @param color The name of a color.
+     * @return The slot of the color, or -1 if no game uses it.
+     */
+    int colorSlot(String color) {
+        return colors.slotOf(color);
+    }
+
+    /**
+     * @return The name of the color in a slot.
+     */
+    String colorName(int slot) {
+        return colors.name(slot);
+    }
+
+    /**
+     * @return The number of colors seen so far.
+     */
+    int colorCount() {
+        return colorCount;
+    }
+
+    /**
+     * Adds a game, unless a game with the same ID has already been added.
+     *
+     * @param id     The game ID.
+     * @param maxima The maximum number of cubes of each color seen in the game, indexed by color slot. Only the first
+     *               colorCount() values are used.
+     * @return true if the game was added, false if its ID was already present.
+     */
+    boolean add(int id, int[] maxima) {
+        int slot = findSlot(id);
+        if (rowSlots[slot] != 0) {
+            return false;
+        }
+        if (size == ids.length) {
+            ids = Arrays.copyOf(ids, size * 2);
+            counts = Arrays.copyOf(counts, size * 2 * colorCount);
+        }
+        ids[size] = id;
+        System.arraycopy(maxima, 0, counts, size * colorCount, colorCount);
+        rowSlots[slot] = ++size;
+        index = null;
+
+        if (size * 2 > rowSlots.length) {
+            rehash(rowSlots.length * 2);
+        }
+        return true;
+    }
+
+    /**
+     * @param id A game ID.
+     * @return The row of the game with that ID, or -1 if there is none.
+     */
+    int rowOf(int id) {
+        return rowSlots[findSlot(id)] - 1;
+    }
+
+    /**
+     * @return The number of games in the store.
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * Calculates the sum of the IDs of all games that can be played with the given cubes.
+     *
+     * @param stock The number of cubes available of each color, indexed by color slot, with colorCount() values.
+     * @return The sum of the IDs of the possible games.
+     */
+    long possibleGameSum(int[] stock) {
+        long sum = 0;
+        for (int row = 0, base = 0; row < size; row++, base += colorCount) {
+            boolean possible = true;
+            for (int c = 0; c < colorCount; c++) {
+                // non-short-circuit & keeps the loop free of branches other than the one below
+                possible &= counts[base + c] <= stock[c];
+            }
+            if (possible) {
+                sum += ids[row];
+            }
+        }
+        return sum;
+    }
+
+    /**
+     * @return The ID of the game in a row.
+     */
+    int id(int row) {
+        return ids[row];
+    }
+
+    /**
+     * @param row   The row of a game.
+     * @param stock The number of cubes available of each color, indexed by color slot, with colorCount() values.
+     * @return true if the game can be played with the given cubes.
+     */
+    boolean isPossible(int row, int[] stock) {
+        int base = row * colorCount;
+        boolean possible = true;
+        for (int c = 0; c < colorCount; c++) {
+            possible &= counts[base + c] <= stock[c];
+        }
+        return possible;
+    }
+
+    /**
+     * Calculates the power of a game: the product of the minimum number of cubes of each color needed to play it. A
+     * color the game does not use counts as 1, so it does not affect the product.
+     *
+     * @param row The row of the game.
+     * @return The power of the game.
+     */
+    long power(int row) {
+        int base = row * colorCount;
+        long power = 1;
+        for (int c = 0; c < colorCount; c++) {
+            power *= Math.max(counts[base + c], 1);
+        }
+        return power;
+    }
+
+    /**
+     * Replaces the counts of a game.
+     *
+     * @param row    The row of the game.
+     * @param maxima The new maximum number of cubes of each color, indexed by color slot.
+     */
+    void replace(int row, int[] maxima) {
+        System.arraycopy(maxima, 0, counts, row * colorCount, colorCount);
+        index = null;
+    }
+
+    /**
+     * Raises the counts of a game to the given counts where those are larger.
+     *
+     * @param row    The row of the game.
+     * @param maxima The maximum number of cubes of each color seen in another record of the game, indexed by slot.
+     */
+    void mergeMax(int row, int[] maxima) {
+        int base = row * colorCount;
+        for (int c = 0; c < colorCount; c++) {
+            counts[base + c] = Math.max(counts[base + c], maxima[c]);
+        }
+        index = null;
+    }
+
+    /**
+     * Returns an index over the games added so far, for answering possible-game queries with many different stocks.
+     * The index is built on first use and rebuilt after games or colors are added or changed.
+     *
+     * @return The index, with colors in slot order.
+     */
+    GameIndex index() {
+        GameIndex current = index;
+        if (current == null) {
+            current = new GameIndex(ids, counts, colorCount, size);
+            index = current;
+        }
+        return current;
+    }
+
+    /**
+     * Finds the slot holding a game ID, or the empty slot where it would go, using linear probing.
+     */
+    private int findSlot(int id) {
+        int mask = rowSlots.length - 1;
+        int hash = id * 0x9E3779B9;
+        int slot = (hash ^ hash >>> 16) & mask;
+        while (rowSlots[slot] != 0 && ids[rowSlots[slot] - 1] != id) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private void rehash(int slotCount) {
+        rowSlots = new int[slotCount];
+        for (int row = 0; row < size; row++) {
+            rowSlots[findSlot(ids[row])] = row + 1;
+        }
+    }
+}
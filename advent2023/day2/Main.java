@@ -1,10 +1,11 @@
 package advent2023.day2;
 
 import java.io.File;
+import java.io.IOException;
 import java.util.HashMap;
 
 public class Main {
-    public static void main(String[] args) {
+    public static void main(String[] args) throws IOException {
         HashMap<String, Integer> cubeStockMap = new HashMap<>();
         File input = new File("advent2023/day2/input.txt");
 
@@ -12,7 +13,7 @@ public class Main {
         cubeStockMap.put("green", 13);
         cubeStockMap.put("blue", 14);
         cubeStockMap.put("red", 12);
-        Day2 games = new Day2(cubeStockMap, input);
+        Day2 games = new Day2(cubeStockMap, input, Runtime.getRuntime().availableProcessors());
 
         System.out.println("Sum of the IDs of all possible games in file: " + games.getSumOfPossibleGames());
 
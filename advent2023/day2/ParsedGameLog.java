@@ -0,0 +1,264 @@
+package advent2023.day2;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * The ParsedGameLog class holds the valid game records of a run of lines from a game log, in the order they were read,
+ * before any duplicate policy has been applied. Each record is a game ID and its (color, count) pairs, one pair per
+ * color in the order the colors first appear on the line, with the count being the largest the line gives that color.
+ * Colors are given slots in a schema of the log's own, so separate chunks of a file can be parsed on separate threads
+ * and appended in file order with append(); Day2 then applies the records one by one, exactly as if it had read the
+ * lines itself.
+ */
+final class ParsedGameLog {
+
+    private static final byte[] GAME_PREFIX = "Game".getBytes(StandardCharsets.US_ASCII);
+    // numbers with more digits than this might not fit in an int
+    private static final int MAX_NUMBER_DIGITS = 9;
+
+    private final ColorSchema colors = new ColorSchema();
+    private int[] ids = new int[64];
+    // position in pairSlots and pairCounts just after the last pair of each record
+    private int[] pairEnds = new int[64];
+    private int size;
+    private int[] pairSlots = new int[256];
+    private int[] pairCounts = new int[256];
+    private int pairCount;
+
+    /**
+     * This method takes the bytes of a line representing a game's details and adds it as a record.
+     * The line should be in the format "Game X: Y color1, Z color2, W color3; ...", where X is the game number,
+     * Y, Z, W are the counts of each color in each round, and color1, color2, color3 are the colors.
+     * The method extracts the game number and the maximum count of each color across all rounds. A line that is not
+     * valid is reported and adds no record. The line is read with a single cursor: numbers are parsed digit by digit
+     * as they are reached, and colors are matched by their bytes, so no regular expression or String is needed.
+     *
+     * @param buffer The buffer holding the line.
+     * @param offset The position of the first byte of the line in the buffer.
+     * @param length The number of bytes in the line.
+     */
+    void parseLine(ByteBuffer buffer, int offset, int length) {
+        int end = offset + length;
+
+        // Extract game number
+        int cursor = skipSpaces(buffer, offset, end);
+        if (!startsWith(buffer, cursor, end, GAME_PREFIX)) {
+            System.out.println("Invalid input format.");
+            return;
+        }
+        cursor = skipSpaces(buffer, cursor + GAME_PREFIX.length, end);
+        int numberEnd = skipDigits(buffer, cursor, end);
+        if (numberEnd == cursor || numberEnd - cursor > MAX_NUMBER_DIGITS) {
+            System.out.println("Invalid input format.");
+            return;
+        }
+        int gameNumber = parseNumber(buffer, cursor, numberEnd);
+        cursor = skipSpaces(buffer, numberEnd, end);
+        if (cursor >= end || buffer.get(cursor) != ':') {
+            System.out.println("Invalid input format.");
+            return;
+        }
+        cursor++;
+
+        // Read "count color" pairs; the ',' and ';' between them make no difference to the maximums
+        int firstPair = pairCount;
+        while (true) {
+            cursor = skipSeparators(buffer, cursor, end);
+            if (cursor >= end) {
+                break;
+            }
+            numberEnd = skipDigits(buffer, cursor, end);
+            if (numberEnd == cursor || numberEnd - cursor > MAX_NUMBER_DIGITS) {
+                pairCount = firstPair;
+                System.out.println("Invalid input format.");
+                return;
+            }
+            int count = parseNumber(buffer, cursor, numberEnd);
+
+            int colorStart = skipSpaces(buffer, numberEnd, end);
+            cursor = colorStart;
+            while (cursor < end && buffer.get(cursor) != ',' && buffer.get(cursor) != ';'
+                    && buffer.get(cursor) != ' ') {
+                cursor++;
+            }
+            if (cursor == colorStart) {
+                // a count with no color after it is as malformed as a color with no count
+                pairCount = firstPair;
+                System.out.println("Invalid input format.");
+                return;
+            }
+            addPair(firstPair, colors.intern(buffer, colorStart, cursor - colorStart), count);
+        }
+
+        if (size == ids.length) {
+            ids = Arrays.copyOf(ids, size * 2);
+            pairEnds = Arrays.copyOf(pairEnds, size * 2);
+        }
+        ids[size] = gameNumber;
+        pairEnds[size] = pairCount;
+        size++;
+    }
+
+    /**
+     * Adds the records of the lines that follow this run of lines. The colors of the other log are given slots in this
+     * log's schema.
+     *
+     * @return This log, holding the records of both.
+     */
+    ParsedGameLog append(ParsedGameLog other) {
+        int[] slotMap = new int[other.colors.size()];
+        for (int slot = 0; slot < slotMap.length; slot++) {
+            byte[] name = other.colors.nameBytes(slot);
+            slotMap[slot] = colors.intern(ByteBuffer.wrap(name), 0, name.length);
+        }
+        int combinedSize = size + other.size;
+        if (combinedSize > ids.length) {
+            ids = Arrays.copyOf(ids, Math.max(ids.length * 2, combinedSize));
+            pairEnds = Arrays.copyOf(pairEnds, ids.length);
+        }
+        for (int i = 0; i < other.size; i++) {
+            ids[size + i] = other.ids[i];
+            pairEnds[size + i] = pairCount + other.pairEnds[i];
+        }
+        ensurePairCapacity(pairCount + other.pairCount);
+        for (int i = 0; i < other.pairCount; i++) {
+            pairSlots[pairCount + i] = slotMap[other.pairSlots[i]];
+            pairCounts[pairCount + i] = other.pairCounts[i];
+        }
+        size = combinedSize;
+        pairCount += other.pairCount;
+        return this;
+    }
+
+    /**
+     * Removes all records. The colors stay in the schema, with the same slots.
+     */
+    void clear() {
+        size = 0;
+        pairCount = 0;
+    }
+
+    /**
+     * @return The number of records.
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * @return The game ID of a record.
+     */
+    int id(int record) {
+        return ids[record];
+    }
+
+    /**
+     * @return The position of the first pair of a record.
+     */
+    int firstPair(int record) {
+        return record == 0 ? 0 : pairEnds[record - 1];
+    }
+
+    /**
+     * @return The position just after the last pair of a record.
+     */
+    int pairEnd(int record) {
+        return pairEnds[record];
+    }
+
+    /**
+     * @return The color slot of a pair, in this log's schema.
+     */
+    int pairSlot(int pair) {
+        return pairSlots[pair];
+    }
+
+    /**
+     * @return The largest count the pair's line gives the pair's color.
+     */
+    int pairCount(int pair) {
+        return pairCounts[pair];
+    }
+
+    /**
+     * @return The number of colors in this log's schema.
+     */
+    int colorCount() {
+        return colors.size();
+    }
+
+    /**
+     * @return The bytes of the name of a color in this log's schema. The array is not copied, so it must not be
+     * changed.
+     */
+    byte[] colorNameBytes(int slot) {
+        return colors.nameBytes(slot);
+    }
+
+    /**
+     * Adds a color's count to the record being read, raising the count of its pair if the color has already been
+     * seen on the line.
+     */
+    private void addPair(int firstPair, int slot, int count) {
+        for (int pair = firstPair; pair < pairCount; pair++) {
+            if (pairSlots[pair] == slot) {
+                pairCounts[pair] = Math.max(pairCounts[pair], count);
+                return;
+            }
+        }
+        ensurePairCapacity(pairCount + 1);
+        pairSlots[pairCount] = slot;
+        pairCounts[pairCount] = count;
+        pairCount++;
+    }
+
+    private void ensurePairCapacity(int minimumCapacity) {
+        if (minimumCapacity > pairSlots.length) {
+            pairSlots = Arrays.copyOf(pairSlots, Math.max(pairSlots.length * 2, minimumCapacity));
+            pairCounts = Arrays.copyOf(pairCounts, pairSlots.length);
+        }
+    }
+
+    private static boolean startsWith(ByteBuffer buffer, int cursor, int end, byte[] prefix) {
+        if (end - cursor < prefix.length) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length; i++) {
+            if (buffer.get(cursor + i) != prefix[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int skipSpaces(ByteBuffer buffer, int cursor, int end) {
+        while (cursor < end && buffer.get(cursor) == ' ') {
+            cursor++;
+        }
+        return cursor;
+    }
+
+    private static int skipSeparators(ByteBuffer buffer, int cursor, int end) {
+        while (cursor < end && (buffer.get(cursor) == ' ' || buffer.get(cursor) == ',' || buffer.get(cursor) == ';')) {
+            cursor++;
+        }
+        return cursor;
+    }
+
+    private static int skipDigits(ByteBuffer buffer, int cursor, int end) {
+        while (cursor < end && buffer.get(cursor) >= '0' && buffer.get(cursor) <= '9') {
+            cursor++;
+        }
+        return cursor;
+    }
+
+    private static int parseNumber(ByteBuffer buffer, int start, int end) {
+        int number = 0;
+        for (int i = start; i < end; i++) {
+            number = number * 10 + (buffer.get(i) - '0');
+        }
+        return number;
+    }
+}
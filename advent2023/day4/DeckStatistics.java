@@ -0,0 +1,157 @@
+package advent2023.day4;
+
+import advent2023.utilities.FileOperations;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Statistics for a whole deck of scratchcards, worked out from the match count of each card in a single pass: the
+ * total points, where a card with m matches is worth 2^(m - 1) points, the total number of cards once copies are won,
+ * how many cards have each match count, and the card with the most copies. The match counts are parsed once and kept
+ * in MatchCounts, so they can be looked up again without reparsing the deck.
+ * <p>
+ * With evaluate(File, int), the deck is read and the total number of cards is counted on several threads, using
+ * ParallelCardCounter. The card with the most copies still needs every card's copies in order, so it is only found,
+ * with one sequential pass, the first time it is asked for.
+ */
+final class DeckStatistics {
+
+    private final MatchCounts matches;
+
+    private final long totalPoints;
+    private final long totalCards;
+    private final int[] matchHistogram;
+    // found on first use; 0 until then, since a deck with any cards has at least one copy of each
+    private int mostCopiedCard;
+    private long mostCopies;
+
+    private DeckStatistics(MatchCounts matches, long totalCards) {
+        this.matches = matches;
+
+        long points = 0;
+        int cardCount = matches.size();
+        int[] histogram = new int[matches.largest() + 1];
+
+        for (int card = 0; card < cardCount; card++) {
+            int cardMatches = matches.get(card);
+            if (cardMatches > 0) {
+                if (cardMatches > Long.SIZE - 1) {
+                    throw new ArithmeticException("Card " + (card + 1) + " with " + cardMatches
+                            + " matches is worth more points than fit in a long");
+                }
+                points = Math.addExact(points, 1L << (cardMatches - 1));
+            }
+            histogram[cardMatches]++;
+        }
+
+        this.totalPoints = points;
+        this.totalCards = totalCards;
+        this.matchHistogram = histogram;
+    }
+
+    /**
+     * Reads a deck with one card per line and works out its statistics.
+     *
+     * @param inputFile The file holding the deck.
+     * @return The statistics of the deck.
+     * @throws IOException         If the file cannot be found or read.
+     * @throws ArithmeticException If the total points do not fit in a long.
+     */
+    static DeckStatistics evaluate(File inputFile) throws IOException {
+        return evaluate(inputFile, 1);
+    }
+
+    /**
+     * Reads a deck with one card per line and works out its statistics, reading the deck and counting the cards on
+     * several threads. Gives the same statistics as evaluate(File).
+     *
+     * @param inputFile   The file holding the deck.
+     * @param parallelism The number of worker threads to use.
+     * @return The statistics of the deck.
+     * @throws IOException         If the file cannot be found or read.
+     * @throws ArithmeticException If the total points do not fit in a long.
+     */
+    static DeckStatistics evaluate(File inputFile, int parallelism) throws IOException {
+        MatchCounts matches;
+        if (parallelism <= 1) {
+            MatchCounts counts = new MatchCounts();
+            FileOperations.forEachLine(inputFile, line -> counts.add(ScratchcardGame.countMatches(line)));
+            matches = counts;
+        } else {
+            matches = FileOperations.reduceLinesInParallel(inputFile, parallelism, MatchCounts.collector());
+        }
+        return new DeckStatistics(matches, ParallelCardCounter.processCards(matches, parallelism));
+    }
+
+    /**
+     * @return The number of cards in the deck, not counting copies.
+     */
+    int cardCount() {
+        return matches.size();
+    }
+
+    /**
+     * @param card The number of a card, counting from 1 in deck order.
+     * @return The number of matches on that card.
+     */
+    int matchesOf(int card) {
+        if (card < 1 || card > matches.size()) {
+            throw new IndexOutOfBoundsException("Card " + card + " is not in a deck of " + matches.size() + " cards");
+        }
+        return matches.get(card - 1);
+    }
+
+    /**
+     * @return The total points of the deck, where a card with m matches is worth 2^(m - 1) points.
+     */
+    long totalPoints() {
+        return totalPoints;
+    }
+
+    /**
+     * @return The total number of cards, originals plus copies won.
+     */
+    long totalCards() {
+        return totalCards;
+    }
+
+    /**
+     * @return How many cards have each match count, indexed by match count, up to the largest match count in the deck.
+     */
+    int[] matchHistogram() {
+        return Arrays.copyOf(matchHistogram, matchHistogram.length);
+    }
+
+    /**
+     * @return The number of the card with the most copies, counting from 1, or 0 for an empty deck. When several
+     * cards tie, the first of them.
+     */
+    synchronized int mostCopiedCard() {
+        findMostCopied();
+        return mostCopiedCard;
+    }
+
+    /**
+     * @return The number of copies of mostCopiedCard(), counting the original.
+     */
+    synchronized long mostCopies() {
+        findMostCopied();
+        return mostCopies;
+    }
+
+    private void findMostCopied() {
+        if (mostCopies > 0) {
+            return;
+        }
+        ScratchcardGame.CopyCounter counter = new ScratchcardGame.CopyCounter();
+        for (int card = 0; card < matches.size(); card++) {
+            long copies = counter.accept(matches.get(card));
+            if (copies > mostCopies) {
+                mostCopies = copies;
+                mostCopiedCard = card + 1;
+            }
+        }
+    }
+}
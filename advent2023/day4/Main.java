@@ -1,22 +1,15 @@
 package advent2023.day4;
 
-import advent2023.utilities.FileOperations;
-
 import java.io.File;
-import java.util.ArrayList;
-import java.util.List;
+import java.io.IOException;
 
 public class Main {
-    public static void main(String[] args) {
+    public static void main(String[] args) throws IOException {
         File file = new File("advent2023/day4/input.txt");
-        ArrayList<String> input = FileOperations.fileToList(file);
-
-        List<ScratchcardGame.Scratchcard> cards = new ArrayList<>();
-        for (String line : input) {
-            cards.add(new ScratchcardGame.Scratchcard(line));
-        }
 
-        int totalCards = ScratchcardGame.processCards(cards);
-        System.out.println("Total scratchcards: " + totalCards);
+        // the deck is read and its cards counted on one thread per available processor
+        DeckStatistics deck = DeckStatistics.evaluate(file, Runtime.getRuntime().availableProcessors());
+        System.out.println("Total points: " + deck.totalPoints());
+        System.out.println("Total scratchcards: " + deck.totalCards());
     }
 }
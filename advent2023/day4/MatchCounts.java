@@ -0,0 +1,117 @@
+package advent2023.day4;
+
+import java.util.Arrays;
+import java.util.stream.Collector;
+
+/**
+ * Growable store of the match count of each card in a deck, in deck order. Counts are kept in a byte per card until
+ * some card has more matches than a byte can hold, then in an int per card. The counts of separate chunks of a deck
+ * can be collected on several threads with collector(), which appends the chunks in order.
+ */
+final class MatchCounts {
+
+    private byte[] smallCounts = new byte[1024];
+    private int[] wideCounts;
+    private int size;
+    private int largest;
+
+    /**
+     * @return A collector that counts the matches on each line of a deck.
+     */
+    static Collector<String, MatchCounts, MatchCounts> collector() {
+        return Collector.of(MatchCounts::new, (counts, line) -> counts.add(ScratchcardGame.countMatches(line)),
+                MatchCounts::append);
+    }
+
+    /**
+     * Adds the match count of the next card.
+     */
+    void add(int matches) {
+        if (smallCounts != null && matches > Byte.MAX_VALUE) {
+            widen(size + 1);
+        }
+        if (smallCounts != null) {
+            if (size == smallCounts.length) {
+                smallCounts = Arrays.copyOf(smallCounts, size * 2);
+            }
+            smallCounts[size++] = (byte) matches;
+        } else {
+            if (size == wideCounts.length) {
+                wideCounts = Arrays.copyOf(wideCounts, size * 2);
+            }
+            wideCounts[size++] = matches;
+        }
+        largest = Math.max(largest, matches);
+    }
+
+    /**
+     * Adds the counts of the cards that follow this chunk of the deck.
+     *
+     * @return This store, holding both chunks.
+     */
+    MatchCounts append(MatchCounts other) {
+        int combined = size + other.size;
+        if (smallCounts != null && other.smallCounts != null) {
+            if (combined > smallCounts.length) {
+                smallCounts = Arrays.copyOf(smallCounts, Math.max(smallCounts.length * 2, combined));
+            }
+            System.arraycopy(other.smallCounts, 0, smallCounts, size, other.size);
+        } else {
+            if (smallCounts != null) {
+                widen(combined);
+            } else if (combined > wideCounts.length) {
+                wideCounts = Arrays.copyOf(wideCounts, Math.max(wideCounts.length * 2, combined));
+            }
+            for (int i = 0; i < other.size; i++) {
+                wideCounts[size + i] = other.get(i);
+            }
+        }
+        size = combined;
+        largest = Math.max(largest, other.largest);
+        return this;
+    }
+
+    /**
+     * @return The number of cards.
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * @param index The position of a card in the deck, counting from 0.
+     * @return The number of matches on that card.
+     */
+    int get(int index) {
+        return smallCounts != null ? smallCounts[index] : wideCounts[index];
+    }
+
+    /**
+     * @return The largest match count of any card, or 0 for an empty deck.
+     */
+    int largest() {
+        return largest;
+    }
+
+    /**
+     * @return The counts as bytes, with size() values in use. The array is not copied, so it must not be changed.
+     * @throws IllegalStateException If some card has more matches than a byte can hold.
+     */
+    byte[] bytes() {
+        if (smallCounts == null) {
+            throw new IllegalStateException("Match count " + largest + " does not fit in a byte");
+        }
+        return smallCounts;
+    }
+
+    /**
+     * Moves the counts to an int per card, with room for at least the given number of cards.
+     */
+    private void widen(int minimumCapacity) {
+        wideCounts = new int[Math.max(smallCounts.length, minimumCapacity)];
+        for (int i = 0; i < size; i++) {
+            wideCounts[i] = smallCounts[i];
+        }
+        smallCounts = null;
+    }
+}
@@ -0,0 +1,209 @@
+package advent2023.day4;
+
+import java.util.ArrayList;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * Counts the total number of scratchcards in a deck using several threads, with the same result as feeding the deck
+ * through ScratchcardGame.CopyCounter.
+ * <p>
+ * Copy propagation is split into segments of consecutive cards. All that passes from one segment to the next is the
+ * window of pending copies for the first W cards after it, where W is the largest match count, and both the window a
+ * segment passes on and the number of cards it adds to the total are affine functions of the window it receives. Each
+ * segment works out those functions on its own thread by running its cards once for every input lane at the same
+ * time, using a difference array so that a card costs the same whatever its match count. A short sequential pass then
+ * feeds the real windows through the segments in order. All arithmetic is on long, so the total is exactly the
+ * sequential total, including how it wraps around on overflow.
+ * <p>
+ * The extra work per card grows with W, so decks with a card of more than MAX_PARALLEL_WINDOW matches are counted
+ * sequentially instead.
+ */
+final class ParallelCardCounter {
+
+    // largest match count for which propagation is split over threads
+    static final int MAX_PARALLEL_WINDOW = 64;
+    // smallest number of cards worth giving to a segment of its own
+    private static final int MIN_SEGMENT_SIZE = 1 << 16;
+    // segments per thread, so that a slow segment does not hold up the others for long
+    private static final int SEGMENTS_PER_THREAD = 4;
+
+    private ParallelCardCounter() {
+    }
+
+    /**
+     * Counts the total number of scratchcards, originals plus copies won, from the match counts of a deck.
+     *
+     * @param matches     The match count of each card, in deck order.
+     * @param parallelism The number of worker threads to use.
+     * @return The total number of cards.
+     */
+    static long processCards(MatchCounts matches, int parallelism) {
+        if (matches.largest() > MAX_PARALLEL_WINDOW) {
+            ScratchcardGame.CopyCounter counter = new ScratchcardGame.CopyCounter();
+            for (int i = 0; i < matches.size(); i++) {
+                counter.accept(matches.get(i));
+            }
+            return counter.totalCards();
+        }
+        return processCards(matches.bytes(), matches.size(), parallelism);
+    }
+
+    /**
+     * Counts the total number of scratchcards, originals plus copies won, from the match count of each card.
+     *
+     * @param matches     The number of matches on each card, in deck order. No count may be above
+     *                    MAX_PARALLEL_WINDOW.
+     * @param cardCount   The number of cards, which is the number of values of matches to use.
+     * @param parallelism The number of worker threads to use.
+     * @return The total number of cards.
+     */
+    static long processCards(byte[] matches, int cardCount, int parallelism) {
+        int window = largestMatchCount(matches, cardCount);
+        if (window > MAX_PARALLEL_WINDOW) {
+            throw new IllegalArgumentException("Match count " + window + " is above " + MAX_PARALLEL_WINDOW);
+        }
+
+        int segmentCount = parallelism * SEGMENTS_PER_THREAD;
+        int segmentSize = Math.max(MIN_SEGMENT_SIZE, (int) ((cardCount + (long) segmentCount - 1) / segmentCount));
+        if (parallelism <= 1 || cardCount <= segmentSize) {
+            ScratchcardGame.CopyCounter counter = new ScratchcardGame.CopyCounter();
+            for (int i = 0; i < cardCount; i++) {
+                counter.accept(matches[i]);
+            }
+            return counter.totalCards();
+        }
+
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            ArrayList<ForkJoinTask<SegmentEffect>> tasks = new ArrayList<>();
+            for (int start = 0; start < cardCount; start += segmentSize) {
+                int from = start;
+                int to = Math.min(start + segmentSize, cardCount);
+                tasks.add(pool.submit(() -> SegmentEffect.of(matches, from, to, window)));
+            }
+
+            // feed the real pending windows through the segments in deck order
+            long total = 0;
+            long[] pendingIn = new long[window];
+            long[] pendingOut = new long[window];
+            for (ForkJoinTask<SegmentEffect> task : tasks) {
+                SegmentEffect effect = task.join();
+                total += effect.apply(pendingIn, pendingOut);
+                long[] swap = pendingIn;
+                pendingIn = pendingOut;
+                pendingOut = swap;
+            }
+            return total;
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private static int largestMatchCount(byte[] matches, int cardCount) {
+        int largest = 0;
+        for (int i = 0; i < cardCount; i++) {
+            largest = Math.max(largest, matches[i]);
+        }
+        return largest;
+    }
+
+    /**
+     * The effect of a segment of cards as affine functions of the window of pending copies it receives: pending[l] is
+     * the number of copies already won of the card l places from the start of the segment. Lane 0 holds the constant
+     * part, from the original cards of the segment, and lane 1 + l the coefficient of pending[l].
+     */
+    private static final class SegmentEffect {
+        private final int window;
+        // totals[lane]: cards counted in the segment
+        private final long[] totals;
+        // pendingOut[k * (window + 1) + lane]: copies won of the card k places after the end of the segment
+        private final long[] pendingOut;
+
+        private SegmentEffect(int window, long[] totals, long[] pendingOut) {
+            this.window = window;
+            this.totals = totals;
+            this.pendingOut = pendingOut;
+        }
+
+        /**
+         * Runs the cards from start up to end once for every lane at the same time.
+         */
+        static SegmentEffect of(byte[] matches, int start, int end, int window) {
+            int lanes = window + 1;
+            // the difference array needs window + 2 slots in use at once, from the next card to one past the window
+            int mask = Integer.highestOneBit(window + 1) * 2 - 1;
+            // difference[(i & mask) * lanes + lane]: change in pending copies from card i - 1 to card i
+            long[] difference = new long[(mask + 1) * lanes];
+            // pending copies of the current card, plus one for its original in lane 0
+            long[] current = new long[lanes];
+            long[] totals = new long[lanes];
+
+            current[0] = 1;
+            if (window > 0) {
+                current[1] = 1;
+                for (int l = 1; l < window; l++) {
+                    // lane 1 + l has a single pending copy, l cards after the start
+                    difference[l * lanes + 1 + l] += 1;
+                    difference[(l + 1) * lanes + 1 + l] -= 1;
+                }
+                difference[1 * lanes + 1] -= 1;
+            }
+
+            for (int i = 0; i < end - start; i++) {
+                int cardMatches = matches[start + i];
+                int next = ((i + 1) & mask) * lanes;
+                if (cardMatches > 0) {
+                    int pastLast = ((i + cardMatches + 1) & mask) * lanes;
+                    for (int lane = 0; lane < lanes; lane++) {
+                        long copies = current[lane];
+                        totals[lane] += copies;
+                        difference[pastLast + lane] -= copies;
+                        current[lane] = copies + copies + difference[next + lane];
+                        difference[next + lane] = 0;
+                    }
+                } else {
+                    for (int lane = 0; lane < lanes; lane++) {
+                        totals[lane] += current[lane];
+                        current[lane] += difference[next + lane];
+                        difference[next + lane] = 0;
+                    }
+                }
+            }
+
+            int length = end - start;
+            long[] pendingOut = new long[window * lanes];
+            for (int k = 0; k < window; k++) {
+                for (int lane = 0; lane < lanes; lane++) {
+                    pendingOut[k * lanes + lane] = k == 0
+                            ? current[lane] - (lane == 0 ? 1 : 0)
+                            : pendingOut[(k - 1) * lanes + lane] + difference[((length + k) & mask) * lanes + lane];
+                }
+            }
+            return new SegmentEffect(window, totals, pendingOut);
+        }
+
+        /**
+         * Applies the effect to a real window of pending copies.
+         *
+         * @param pendingIn  The pending copies entering the segment.
+         * @param pendingOut Filled with the pending copies leaving the segment.
+         * @return The number of cards counted in the segment.
+         */
+        long apply(long[] pendingIn, long[] pendingOut) {
+            int lanes = window + 1;
+            long total = totals[0];
+            for (int l = 0; l < window; l++) {
+                total += totals[1 + l] * pendingIn[l];
+            }
+            for (int k = 0; k < window; k++) {
+                long pending = this.pendingOut[k * lanes];
+                for (int l = 0; l < window; l++) {
+                    pending += this.pendingOut[k * lanes + 1 + l] * pendingIn[l];
+                }
+                pendingOut[k] = pending;
+            }
+            return total;
+        }
+    }
+}
@@ -4,55 +4,244 @@ import java.util.*;
 
 public class ScratchcardGame {
 
+    // largest card number kept in a card's bitsets; negative and larger numbers are kept in sorted arrays instead
+    static final int MAX_CARD_NUMBER = (1 << 16) - 1;
+    // returned by tokenValue for a token that is not a number
+    private static final long NOT_A_NUMBER = Long.MIN_VALUE;
+
+    /**
+     * A scratchcard with each side stored as a bitset: bit n of winningNumbers is set if n is a winning number, and bit
+     * n of yourNumbers is set if n is one of your numbers. Card numbers are small, so each side is usually two longs
+     * covering 0 to 127, and grows only for cards with larger numbers up to MAX_CARD_NUMBER. Negative numbers and
+     * numbers above MAX_CARD_NUMBER are rare, so they are kept in plain int arrays and matched by binary search.
+     */
     static class Scratchcard {
-        Set<Integer> winningNumbers;
-        List<Integer> yourNumbers;
+        long[] winningNumbers;
+        long[] yourNumbers;
+        // matches from numbers that appear more than once among your numbers, which the bitset only records once
+        int repeatedMatches;
+        // numbers outside 0 to MAX_CARD_NUMBER; winningOutliers is sorted once the card is parsed
+        int[] winningOutliers = new int[0];
+        int[] yourOutliers = new int[0];
 
         Scratchcard(String input) {
-            String[] parts = input.split(" \\| ");
-            winningNumbers = new HashSet<>();
-            for (String num : parts[0].split(" ")) {
-                if (isNumeric(num)) {
-                    winningNumbers.add(Integer.parseInt(num));
+            winningNumbers = new long[2];
+            yourNumbers = new long[2];
+            boolean yourSide = false;
+
+            for (int i = numbersStart(input); i < input.length(); ) {
+                int end = tokenEnd(input, i);
+                if (end - i == 1 && input.charAt(i) == '|') {
+                    yourSide = true;
+                } else {
+                    long value = tokenValue(input, i, end);
+                    if (value == NOT_A_NUMBER) {
+                        // not a number, so not part of the card
+                    } else if (value < 0 || value > MAX_CARD_NUMBER) {
+                        if (!yourSide) {
+                            winningOutliers = append(winningOutliers, (int) value);
+                        } else {
+                            yourOutliers = append(yourOutliers, (int) value);
+                        }
+                    } else if (!yourSide) {
+                        winningNumbers = setBit(winningNumbers, (int) value);
+                    } else {
+                        int number = (int) value;
+                        if (testBit(yourNumbers, number) && testBit(winningNumbers, number)) {
+                            repeatedMatches++;
+                        }
+                        yourNumbers = setBit(yourNumbers, number);
+                    }
                 }
+                i = end + 1;
+            }
+            Arrays.sort(winningOutliers);
+        }
+
+        int countMatches() {
+            int matches = repeatedMatches;
+            for (int i = 0; i < Math.min(winningNumbers.length, yourNumbers.length); i++) {
+                matches += Long.bitCount(winningNumbers[i] & yourNumbers[i]);
             }
-            yourNumbers = new ArrayList<>();
-            for (String num : parts[1].split(" ")) {
-                if (isNumeric(num)) {
-                    yourNumbers.add(Integer.parseInt(num));
+            for (int number : yourOutliers) {
+                if (Arrays.binarySearch(winningOutliers, number) >= 0) {
+                    matches++;
                 }
             }
+            return matches;
         }
 
-        boolean isNumeric(String str) {
-            return str.matches("-?\\d+(\\.\\d+)?");
+        private static int[] append(int[] numbers, int number) {
+            int[] appended = Arrays.copyOf(numbers, numbers.length + 1);
+            appended[numbers.length] = number;
+            return appended;
         }
+    }
 
-        int countMatches() {
-            int matches = 0;
-            for (int num : yourNumbers) {
-                if (winningNumbers.contains(num)) {
-                    matches++;
+    /**
+     * Counts how many of your numbers are winning numbers on a card, without creating a Scratchcard. Cards whose
+     * numbers are all from 0 to 127 are handled with two longs per side and allocate nothing; other cards fall back to
+     * a Scratchcard.
+     *
+     * @param line A line of the form "Card X: winning numbers | your numbers".
+     * @return The number of matches on the card.
+     */
+    static int countMatches(String line) {
+        long winningLow = 0, winningHigh = 0, yoursLow = 0, yoursHigh = 0;
+        int repeatedMatches = 0;
+        boolean yourSide = false;
+
+        for (int i = numbersStart(line); i < line.length(); ) {
+            int end = tokenEnd(line, i);
+            if (end - i == 1 && line.charAt(i) == '|') {
+                yourSide = true;
+            } else {
+                long value = tokenValue(line, i, end);
+                if (value != NOT_A_NUMBER && (value < 0 || value >= 128)) {
+                    return new Scratchcard(line).countMatches();
+                }
+                if (value != NOT_A_NUMBER) {
+                    int number = (int) value;
+                    // shifts only use the low 6 bits, so this picks the bit within whichever word holds the number
+                    long bit = 1L << number;
+                    boolean high = number >= 64;
+                    if (!yourSide) {
+                        winningLow |= high ? 0 : bit;
+                        winningHigh |= high ? bit : 0;
+                    } else {
+                        long winning = high ? winningHigh : winningLow;
+                        long yours = high ? yoursHigh : yoursLow;
+                        if ((winning & yours & bit) != 0) {
+                            repeatedMatches++;
+                        }
+                        yoursLow |= high ? 0 : bit;
+                        yoursHigh |= high ? bit : 0;
+                    }
                 }
             }
-            return matches;
+            i = end + 1;
+        }
+        return repeatedMatches + Long.bitCount(winningLow & yoursLow) + Long.bitCount(winningHigh & yoursHigh);
+    }
+
+    /**
+     * @return The position just after the ':' that ends the card label, or 0 if there is none.
+     */
+    private static int numbersStart(String line) {
+        return line.indexOf(':') + 1;
+    }
+
+    /**
+     * @return The position of the space that ends the token starting at start, or the end of the line.
+     */
+    private static int tokenEnd(String line, int start) {
+        int end = start;
+        while (end < line.length() && line.charAt(end) != ' ') {
+            end++;
         }
+        return end;
     }
 
-    static int processCards(List<Scratchcard> cards) {
-        int totalCards = 0;
-        List<Integer> counts = new ArrayList<>(Collections.nCopies(cards.size(), 1));
+    /**
+     * @return The value of the token from start up to end, an optional '-' followed by digits, or NOT_A_NUMBER if the
+     * token is anything else.
+     * @throws IllegalArgumentException If the token is a number that does not fit in an int.
+     */
+    private static long tokenValue(String line, int start, int end) {
+        boolean negative = start < end && line.charAt(start) == '-';
+        int digitsStart = negative ? start + 1 : start;
+        if (digitsStart == end) {
+            return NOT_A_NUMBER;
+        }
+        // the most an int can hold on this side of zero
+        long limit = negative ? -(long) Integer.MIN_VALUE : Integer.MAX_VALUE;
+        long value = 0;
+        for (int i = digitsStart; i < end; i++) {
+            char c = line.charAt(i);
+            if (c < '0' || c > '9') {
+                return NOT_A_NUMBER;
+            }
+            // stop growing once past the limit, so a long run of digits cannot wrap around
+            value = Math.min(value * 10 + (c - '0'), limit + 1);
+        }
+        if (value > limit) {
+            throw new IllegalArgumentException("Card number " + line.substring(start, end) + " does not fit in an int");
+        }
+        return negative ? -value : value;
+    }
+
+    private static long[] setBit(long[] bits, int number) {
+        if (number >>> 6 >= bits.length) {
+            bits = Arrays.copyOf(bits, Math.max(bits.length * 2, (number >>> 6) + 1));
+        }
+        bits[number >>> 6] |= 1L << number;
+        return bits;
+    }
+
+    private static boolean testBit(long[] bits, int number) {
+        return number >>> 6 < bits.length && (bits[number >>> 6] & 1L << number) != 0;
+    }
 
-        for (int i = 0; i < cards.size(); i++) {
-            int matches = cards.get(i).countMatches();
-            for (int j = i + 1; j <= i + matches && j < cards.size(); j++) {
-                counts.set(j, counts.get(j) + counts.get(i));
+    /**
+     * Counts the total number of scratchcards, originals plus copies won, for a deck that is fed in one card at a
+     * time. A card with m matches wins one copy of each of the next m cards for every copy of it, so copies only spread
+     * forward by at most the largest match count seen. Pending copies for the cards ahead are kept in a circular buffer
+     * of that size, so memory does not grow with the number of cards. Copies of cards past the end of the deck are
+     * never collected and so are not counted.
+     */
+    static class CopyCounter {
+        // pending[(head + k) & (pending.length - 1)] is the number of copies won so far of the card k places ahead
+        private long[] pending = new long[16];
+        private int head;
+        private long totalCards;
+
+        /**
+         * Adds the next card of the deck.
+         *
+         * @param matches The number of matches on the card.
+         * @return The number of copies of the card, counting the original.
+         */
+        long accept(int matches) {
+            long copies = 1 + pending[head];
+            pending[head] = 0;
+            head = (head + 1) & (pending.length - 1);
+            totalCards += copies;
+
+            if (matches >= pending.length) {
+                grow(matches + 1);
+            }
+            int mask = pending.length - 1;
+            for (int k = 0; k < matches; k++) {
+                pending[(head + k) & mask] += copies;
             }
+            return copies;
+        }
+
+        /**
+         * @return The total number of cards, originals plus copies, among the cards added so far.
+         */
+        long totalCards() {
+            return totalCards;
         }
 
-        for (int count : counts) {
-            totalCards += count;
+        /**
+         * Replaces the buffer with one of at least the given size, with the next card's pending copies at the front.
+         */
+        private void grow(int minimumSize) {
+            long[] grown = new long[Integer.highestOneBit(minimumSize - 1) << 1];
+            for (int k = 0; k < pending.length; k++) {
+                grown[k] = pending[(head + k) & (pending.length - 1)];
+            }
+            pending = grown;
+            head = 0;
+        }
+    }
+
+    static long processCards(List<Scratchcard> cards) {
+        CopyCounter counter = new CopyCounter();
+        for (Scratchcard card : cards) {
+            counter.accept(card.countMatches());
         }
-        return totalCards;
+        return counter.totalCards();
     }
 }
@@ -0,0 +1,245 @@
+package advent2023.day5;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A mapping of non-negative numbers that is linear within each of its segments. Segment i covers the numbers from
+ * breakpoints[i] up to (but not including) breakpoints[i + 1], and maps each number n in it to n + offsets[i]. The last
+ * segment has no upper bound, and negative numbers map to themselves.
+ * <p>
+ * Any number of rule lists can be merged into a single ComposedMapping, so that a number can be pushed through a whole
+ * chain of maps with one binary search. Instances are immutable and can be shared between threads.
+ */
+public final class ComposedMapping {
+
+    private final long[] breakpoints;
+    private final long[] offsets;
+
+    private ComposedMapping(long[] breakpoints, long[] offsets) {
+        this.breakpoints = breakpoints;
+        this.offsets = offsets;
+    }
+
+    /**
+     * Creates a mapping that maps every number to itself.
+     *
+     * @return The identity mapping.
+     */
+    static ComposedMapping identity() {
+        return new ComposedMapping(new long[]{0}, new long[]{0});
+    }
+
+    /**
+     * Creates a mapping from a single rule list, where each rule is {destination start, source start, range length}.
+     * The first rule in the list that contains a number is the one applied to it, and numbers not covered by any rule
+     * map to themselves.
+     *
+     * @param ruleList The list of rules to convert.
+     * @return The mapping described by the rule list.
+     */
+    static ComposedMapping fromRuleList(ArrayList<long[]> ruleList) {
+        // every rule starts and ends at a boundary, so whether a rule applies is the same for the whole of a segment
+        long[] boundaries = new long[ruleList.size() * 2 + 1];
+        int count = 0;
+        boundaries[count++] = 0;
+        for (long[] rule : ruleList) {
+            boundaries[count++] = rule[1];
+            boundaries[count++] = rule[1] + rule[2];
+        }
+        Arrays.sort(boundaries, 0, count);
+
+        SegmentBuffer segments = new SegmentBuffer(count);
+        for (int i = 0; i < count; i++) {
+            long start = boundaries[i];
+            if (start < 0 || (i > 0 && start == boundaries[i - 1])) {
+                continue;
+            }
+            long offset = 0;
+            for (long[] rule : ruleList) {
+                if (start >= rule[1] && start < rule[1] + rule[2]) {
+                    offset = rule[0] - rule[1];
+                    break;
+                }
+            }
+            segments.add(start, offset);
+        }
+        return segments.toMapping();
+    }
+
+    /**
+     * Merges a chain of rule lists into a single mapping. The rule lists are applied in the order given, so the
+     * result maps a number the same way as applying each rule list in turn.
+     *
+     * @param ruleLists The rule lists to merge, in the order they are applied.
+     * @return The merged mapping.
+     */
+    static ComposedMapping compose(List<ArrayList<long[]>> ruleLists) {
+        ComposedMapping mapping = identity();
+        for (ArrayList<long[]> ruleList : ruleLists) {
+            mapping = mapping.andThen(fromRuleList(ruleList));
+        }
+        return mapping;
+    }
+
+    /**
+     * Creates a mapping that applies this mapping first and the given mapping second.
+     *
+     * @param next The mapping to apply to the results of this mapping.
+     * @return The combined mapping.
+     */
+    ComposedMapping andThen(ComposedMapping next) {
+        SegmentBuffer segments = new SegmentBuffer(breakpoints.length + next.breakpoints.length);
+
+        for (int i = 0; i < breakpoints.length; i++) {
+            long start = breakpoints[i];
+            long offset = offsets[i];
+            boolean lastSegment = i == breakpoints.length - 1;
+            long imageStart = start + offset;
+
+            // the start of this segment lands somewhere inside a segment of the next mapping
+            int j = next.segmentIndex(imageStart);
+            segments.add(start, offset + next.offsetAt(j));
+
+            // every later breakpoint of the next mapping that falls inside the image of this segment splits it
+            for (j = j + 1; j < next.breakpoints.length; j++) {
+                long splitPoint = next.breakpoints[j] - offset;
+                if (!lastSegment && splitPoint >= breakpoints[i + 1]) {
+                    break;
+                }
+                segments.add(splitPoint, offset + next.offsets[j]);
+            }
+        }
+        return segments.toMapping();
+    }
+
+    /**
+     * Maps a single number.
+     *
+     * @param value The number to map.
+     * @return The mapped number.
+     */
+    public long map(long value) {
+        return value + offsetAt(segmentIndex(value));
+    }
+
+    /**
+     * Maps a run of numbers from one array into another. The segment of each number is found with a binary search
+     * that always takes the same number of steps and picks each half with a conditional move rather than a branch, so
+     * unsorted input does not cause branch mispredictions. This is faster than calling map() in a loop for large
+     * batches.
+     *
+     * @param in     The array holding the numbers to map.
+     * @param out    The array to write the mapped numbers to, at the same positions. It may be the same array as in.
+     * @param from   The position of the first number to map.
+     * @param length The number of values to map.
+     */
+    public void mapBatch(long[] in, long[] out, int from, int length) {
+        long[] breakpoints = this.breakpoints;
+        long[] offsets = this.offsets;
+        int segments = breakpoints.length;
+
+        for (int i = from; i < from + length; i++) {
+            long value = in[i];
+            int base = 0;
+            int remaining = segments;
+            while (remaining > 1) {
+                int half = remaining >>> 1;
+                base = breakpoints[base + half] <= value ? base + half : base;
+                remaining -= half;
+            }
+            // negative numbers map to themselves; every other number is at or above breakpoints[0], which is 0
+            out[i] = value < 0 ? value : value + offsets[base];
+        }
+    }
+
+    /**
+     * Finds the smallest mapped number for a range of numbers, visiting each segment the range overlaps once instead
+     * of every number in the range.
+     *
+     * @param start  The first number of the range.
+     * @param length The number of values in the range.
+     * @return The smallest mapped number in the range, or Long.MAX_VALUE if the range is empty.
+     */
+    public long minimumOver(long start, long length) {
+        long minimum = Long.MAX_VALUE;
+        if (length <= 0) {
+            return minimum;
+        }
+        long end = start + length;
+
+        if (start < 0) {
+            // negative numbers map to themselves, so the start of the range is the smallest of them
+            minimum = start;
+            start = 0;
+        }
+        for (int i = segmentIndex(start); i < breakpoints.length && breakpoints[i] < end; i++) {
+            minimum = Math.min(Math.max(start, breakpoints[i]) + offsets[i], minimum);
+        }
+        return minimum;
+    }
+
+    /**
+     * @return The number of linear segments in this mapping.
+     */
+    public int segmentCount() {
+        return breakpoints.length;
+    }
+
+    /**
+     * Finds the segment containing a number using binary search.
+     *
+     * @param value The number to look up.
+     * @return The index of the last breakpoint at or below the number, or -1 if the number is negative.
+     */
+    private int segmentIndex(long value) {
+        int low = 0;
+        int high = breakpoints.length - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (breakpoints[mid] <= value) {
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return high;
+    }
+
+    private long offsetAt(int segmentIndex) {
+        return segmentIndex < 0 ? 0 : offsets[segmentIndex];
+    }
+
+    /**
+     * Growable pair of breakpoint and offset arrays used while a mapping is being built. Adjacent segments with the
+     * same offset are merged as they are added.
+     */
+    private static final class SegmentBuffer {
+        private long[] breakpoints;
+        private long[] offsets;
+        private int size;
+
+        SegmentBuffer(int initialCapacity) {
+            breakpoints = new long[Math.max(initialCapacity, 1)];
+            offsets = new long[Math.max(initialCapacity, 1)];
+        }
+
+        void add(long breakpoint, long offset) {
+            if (size > 0 && offsets[size - 1] == offset) {
+                return;
+            }
+            if (size == breakpoints.length) {
+                breakpoints = Arrays.copyOf(breakpoints, size * 2);
+                offsets = Arrays.copyOf(offsets, size * 2);
+            }
+            breakpoints[size] = breakpoint;
+            offsets[size] = offset;
+            size++;
+        }
+
+        ComposedMapping toMapping() {
+            return new ComposedMapping(Arrays.copyOf(breakpoints, size), Arrays.copyOf(offsets, size));
+        }
+    }
+}
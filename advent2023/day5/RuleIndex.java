@@ -0,0 +1,79 @@
+package advent2023.day5;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+
+/**
+ * A single almanac map stored as parallel primitive arrays of source start, range length and delta (destination start
+ * minus source start), sorted by source start. Looking up a number is a binary search over the source starts instead
+ * of a linear scan over the rules. Instances are immutable and can be shared between threads.
+ */
+final class RuleIndex {
+
+    private final long[] sourceStarts;
+    private final long[] lengths;
+    private final long[] deltas;
+
+    /**
+     * Builds an index from a rule list, where each rule is {destination start, source start, range length}. Rules with
+     * a length of zero match nothing and are dropped.
+     *
+     * @param ruleList The list of rules to index.
+     * @throws IllegalArgumentException If the source ranges of two rules overlap.
+     */
+    RuleIndex(ArrayList<long[]> ruleList) {
+        ArrayList<long[]> sortedRules = new ArrayList<>();
+        for (long[] rule : ruleList) {
+            if (rule[2] > 0) {
+                sortedRules.add(rule);
+            }
+        }
+        sortedRules.sort(Comparator.comparingLong(rule -> rule[1]));
+
+        int size = sortedRules.size();
+        sourceStarts = new long[size];
+        lengths = new long[size];
+        deltas = new long[size];
+        for (int i = 0; i < size; i++) {
+            long[] rule = sortedRules.get(i);
+            if (i > 0 && rule[1] < sourceStarts[i - 1] + lengths[i - 1]) {
+                throw new IllegalArgumentException("Overlapping rules: source range starting at " + sourceStarts[i - 1]
+                        + " with length " + lengths[i - 1] + " overlaps source range starting at " + rule[1]);
+            }
+            sourceStarts[i] = rule[1];
+            lengths[i] = rule[2];
+            deltas[i] = rule[0] - rule[1];
+        }
+    }
+
+    /**
+     * Converts a number to its destination. Numbers not covered by any rule map to themselves.
+     *
+     * @param value The number to convert.
+     * @return The destination of the number.
+     */
+    long map(long value) {
+        // find the last rule starting at or below the value
+        int low = 0;
+        int high = sourceStarts.length - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (sourceStarts[mid] <= value) {
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        if (high >= 0 && value - sourceStarts[high] < lengths[high]) {
+            return value + deltas[high];
+        }
+        return value;
+    }
+
+    /**
+     * @return The number of rules in the index.
+     */
+    int size() {
+        return sourceStarts.length;
+    }
+}
@@ -4,39 +4,46 @@ import java.io.BufferedReader;
 import java.io.FileReader;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
 
+/**
+ * The SeedProcessor class represents a parsed almanac: the seeds line and the seven maps that convert a seed into a
+ * location. The input file is parsed once in the constructor and never changed afterwards, so one instance can be
+ * shared between threads and queried many times. Derived data, such as the merged seed-to-location mapping and the
+ * puzzle answers, is computed on first use and then reused.
+ */
 public class SeedProcessor {
 
-    private static ArrayList<Long> seeds;
-    private static ArrayList<long[]> seedToSoilList, soilToFertilizerList, fertilizerToWaterList, waterToLightList,
-            lightToTemperatureList, temperatureToHumidityList, humidityToLocationList;
-    private final long minSeedSingleSeeds;
-    private final long minSeedUsingRange;
+    // ranges of at most this many seeds are scanned by a single task in the parallel brute-force mode
+    private static final long PARALLEL_CHUNK_SIZE = 1 << 16;
+
+    private final ArrayList<Long> seeds = new ArrayList<>();
+    private final ArrayList<long[]> seedToSoilList = new ArrayList<>(), soilToFertilizerList = new ArrayList<>(),
+            fertilizerToWaterList = new ArrayList<>(), waterToLightList = new ArrayList<>(),
+            lightToTemperatureList = new ArrayList<>(), temperatureToHumidityList = new ArrayList<>(),
+            humidityToLocationList = new ArrayList<>();
+    private final RuleIndex[] ruleIndexes;
+
+    // computed on first use; each value is immutable, so a thread that races to compute it again gets the same result
+    private volatile ComposedMapping seedToLocationMapping;
+    private volatile Long minSeedSingleSeeds;
+    private volatile Long minSeedUsingRange;
 
 
     /**
      * Constructor for the SeedProcessor class.
-     * Processes the seed input file and calculates the minimum seed using single seeds and seed ranges.
+     * Processes the seed input file. The answers are not calculated until they are first asked for.
      *
      * @param inputFileLocation The location of the input file containing seed data.
      * @throws IOException If an I/O error occurs.
+     * @throws IllegalArgumentException If any map contains overlapping rules.
      */
     public SeedProcessor(String inputFileLocation) throws IOException {
-        seeds = new ArrayList<>();
-        seedToSoilList = new ArrayList<>();
-        soilToFertilizerList = new ArrayList<>();
-        fertilizerToWaterList = new ArrayList<>();
-        waterToLightList = new ArrayList<>();
-        lightToTemperatureList = new ArrayList<>();
-        temperatureToHumidityList = new ArrayList<>();
-        humidityToLocationList = new ArrayList<>();
         processSeedInput(inputFileLocation);
-        // TODO: cleanup the methods requiring passing maps. This is no longer required with the new class design.
-        minSeedSingleSeeds = minimumSeedUsingSingleSeeds(seeds, seedToSoilList, soilToFertilizerList, fertilizerToWaterList,
-                waterToLightList, lightToTemperatureList, temperatureToHumidityList, humidityToLocationList);
-        // TODO: improve the efficiency of this (and associated) methods). Current time complexity is too high.
-        minSeedUsingRange = minimumSeedUsingSeedRanges(seeds);
-
+        ruleIndexes = buildRuleIndexes();
     }
 
     /**
@@ -45,9 +52,19 @@ public class SeedProcessor {
      * @param fileLocation The location of the input file.
      * @throws IOException If an I/O error occurs.
      */
-    void processSeedInput(String fileLocation) throws IOException {
-        BufferedReader reader = new BufferedReader(new FileReader(fileLocation));
+    private void processSeedInput(String fileLocation) throws IOException {
+        try (BufferedReader reader = new BufferedReader(new FileReader(fileLocation))) {
+            processSeedInput(reader);
+        }
+    }
 
+    /**
+     * Processes seed input from a reader and stores the data into the appropriate data structures.
+     *
+     * @param reader The reader to take the input from.
+     * @throws IOException If an I/O error occurs.
+     */
+    private void processSeedInput(BufferedReader reader) throws IOException {
         String line;
         while ((line = reader.readLine()) != null) {
             if (line.startsWith("seeds:")) {
@@ -86,7 +103,6 @@ public class SeedProcessor {
                 }
             }
         }
-        reader.close();
     }
 
     /**
@@ -96,7 +112,7 @@ public class SeedProcessor {
      * @param line     The line from the input file containing the rule.
      * @param ruleList The list to add the rule to.
      */
-    void addRuleToList(String line, ArrayList<long[]> ruleList) {
+    private void addRuleToList(String line, ArrayList<long[]> ruleList) {
         long[] rule = new long[3];
         String[] parts = line.split(" ");
         rule[0] = Long.parseLong(parts[0]); // destination start
@@ -106,115 +122,133 @@ public class SeedProcessor {
     }
 
     /**
-     * Converts a seed to its destination using the given rule list.
+     * Converts a seed to its destination using the given rule index, with a binary search over the rules.
      *
-     * @param seed     The seed to convert.
-     * @param ruleList The list of rules to use for the conversion.
+     * @param seed      The seed to convert.
+     * @param ruleIndex The index of the rules to use for the conversion.
      * @return The destination of the seed.
      */
-    long seedToDestination(long seed, ArrayList<long[]> ruleList) {
-        long destinationStart;
-        long sourceStart;
-        long rangeLength;
-
-        for (long[] rule : ruleList) {
-            destinationStart = rule[0];
-            sourceStart = rule[1];
-            rangeLength = rule[2];
-
-            if (seed >= sourceStart && seed < sourceStart + rangeLength) {
-                seed = destinationStart + (seed - sourceStart);
-                break;
-            }
-        }
-        return seed;
+    long seedToDestination(long seed, RuleIndex ruleIndex) {
+        return ruleIndex.map(seed);
     }
 
     /**
-     * Processes a seed through all maps.
+     * Builds a sorted rule index for each of the seven maps, in the order they are applied.
      *
-     * @param seed                      The seed to process.
-     * @param seedToSoilList            The seed-to-soil map.
-     * @param soilToFertilizerList      The soil-to-fertilizer map.
-     * @param fertilizerToWaterList     The fertilizer-to-water map.
-     * @param waterToLightList          The water-to-light map.
-     * @param lightToTemperatureList    The light-to-temperature map.
-     * @param temperatureToHumidityList The temperature-to-humidity map.
-     * @param humidityToLocationList    The humidity-to-location map.
+     * @return The rule indexes, from seed-to-soil through humidity-to-location.
+     * @throws IllegalArgumentException If any map contains overlapping rules.
+     */
+    private RuleIndex[] buildRuleIndexes() {
+        return new RuleIndex[]{
+                new RuleIndex(seedToSoilList),
+                new RuleIndex(soilToFertilizerList),
+                new RuleIndex(fertilizerToWaterList),
+                new RuleIndex(waterToLightList),
+                new RuleIndex(lightToTemperatureList),
+                new RuleIndex(temperatureToHumidityList),
+                new RuleIndex(humidityToLocationList)
+        };
+    }
+
+    /**
+     * Processes a seed through all maps using the sorted rule indexes.
+     *
+     * @param seed The seed to process.
      * @return The final destination of the seed.
      */
-    //TODO: refactor the passing of the maps to this method. It is no longer needed with the current class design.
-    long processSeedThroughAllMaps(long seed,
-                                   ArrayList<long[]> seedToSoilList,
-                                   ArrayList<long[]> soilToFertilizerList,
-                                   ArrayList<long[]> fertilizerToWaterList,
-                                   ArrayList<long[]> waterToLightList,
-                                   ArrayList<long[]> lightToTemperatureList,
-                                   ArrayList<long[]> temperatureToHumidityList,
-                                   ArrayList<long[]> humidityToLocationList) {
-        seed = seedToDestination(seed, seedToSoilList);
-        seed = seedToDestination(seed, soilToFertilizerList);
-        seed = seedToDestination(seed, fertilizerToWaterList);
-        seed = seedToDestination(seed, waterToLightList);
-        seed = seedToDestination(seed, lightToTemperatureList);
-        seed = seedToDestination(seed, temperatureToHumidityList);
-        seed = seedToDestination(seed, humidityToLocationList);
+    long processSeedThroughAllIndexes(long seed) {
+        for (RuleIndex ruleIndex : ruleIndexes) {
+            seed = seedToDestination(seed, ruleIndex);
+        }
         return seed;
     }
 
+    /**
+     * Merges all seven maps into a single seed-to-location mapping, so that each seed can be converted with one
+     * binary search instead of seven linear scans.
+     *
+     * @return The merged seed-to-location mapping.
+     */
+    ComposedMapping buildSeedToLocationMapping() {
+        return ComposedMapping.compose(List.of(seedToSoilList, soilToFertilizerList, fertilizerToWaterList,
+                waterToLightList, lightToTemperatureList, temperatureToHumidityList, humidityToLocationList));
+    }
 
     /**
-     * Finds the minimum seed using single seeds.
+     * Finds the minimum seed using single seeds, converting each seed with the merged seed-to-location mapping.
      *
-     * @param seeds                     The list of seeds.
-     * @param seedToSoilList            The seed-to-soil map.
-     * @param soilToFertilizerList      The soil-to-fertilizer map.
-     * @param fertilizerToWaterList     The fertilizer-to-water map.
-     * @param waterToLightList          The water-to-light map.
-     * @param lightToTemperatureList    The light-to-temperature map.
-     * @param temperatureToHumidityList The temperature-to-humidity map.
-     * @param humidityToLocationList    The humidity-to-location map.
+     * @param seeds The list of seeds.
      * @return The minimum seed.
      */
-    //TODO: refactor the passing of the maps to this method. It is no longer needed with the current class design.
-    long minimumSeedUsingSingleSeeds(ArrayList<Long> seeds, ArrayList<long[]> seedToSoilList,
-                                     ArrayList<long[]> soilToFertilizerList, ArrayList<long[]> fertilizerToWaterList,
-                                     ArrayList<long[]> waterToLightList, ArrayList<long[]> lightToTemperatureList,
-                                     ArrayList<long[]> temperatureToHumidityList, ArrayList<long[]> humidityToLocationList) {
+    long minimumSeedUsingComposedMapping(ArrayList<Long> seeds) {
         if (seeds.isEmpty()) {
             return 0;
         }
-        long minSeed = seeds.getFirst();
+        long minSeed = Long.MAX_VALUE;
         for (long seed : seeds) {
-            seed = processSeedThroughAllMaps(seed, seedToSoilList, soilToFertilizerList, fertilizerToWaterList,
-                    waterToLightList, lightToTemperatureList, temperatureToHumidityList, humidityToLocationList);
-            if (seed < minSeed) {
-                minSeed = seed;
-            }
+            minSeed = Math.min(getSeedToLocationMapping().map(seed), minSeed);
         }
         return minSeed;
     }
 
     /**
-     * Finds the minimum seed using seed ranges.
+     * Finds the minimum seed using seed ranges by checking every seed, spread over several threads. Each range is split
+     * into chunks of at most PARALLEL_CHUNK_SIZE seeds, and the chunk minimums are reduced on a ForkJoinPool with the
+     * given parallelism.
      *
-     * @param seeds The list of seeds.
-     * @return The minimum seed.
+     * @param seeds       The list of seeds.
+     * @param parallelism The number of worker threads to use.
+     * @return The minimum seed, or Long.MAX_VALUE if the ranges contain no seeds.
      */
-    long minimumSeedUsingSeedRanges(ArrayList<Long> seeds) {
-        if (seeds.isEmpty()) {
-            return 0;
+    long minimumSeedUsingSeedRangesParallel(ArrayList<Long> seeds, int parallelism) {
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            ArrayList<ForkJoinTask<Long>> tasks = new ArrayList<>();
+            for (long[] range : transformSeedsIntoRanges(seeds)) {
+                tasks.add(pool.submit(new MinimumSeedTask(range[0], range[0] + range[1])));
+            }
+
+            long minSeed = Long.MAX_VALUE;
+            for (ForkJoinTask<Long> task : tasks) {
+                minSeed = Math.min(task.join(), minSeed);
+            }
+            return minSeed;
+        } finally {
+            pool.shutdown();
         }
+    }
 
-        // grab all the range pairs from the seeds
-        ArrayList<long[]> seedRanges = transformSeedsIntoRanges(seeds);
+    /**
+     * Finds the minimum seed between a start (inclusive) and an end (exclusive) seed, splitting the work in half until
+     * each part is at most PARALLEL_CHUNK_SIZE seeds long.
+     */
+    private final class MinimumSeedTask extends RecursiveTask<Long> {
+        private static final long serialVersionUID = 1L;
 
-        long minSeed = Long.MAX_VALUE;
+        private final long start;
+        private final long end;
 
-        for (long[] range : seedRanges) {
-            minSeed = Math.min(minimumSeedInRange(range), minSeed);
+        MinimumSeedTask(long start, long end) {
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        protected Long compute() {
+            if (end - start <= PARALLEL_CHUNK_SIZE) {
+                long minSeed = Long.MAX_VALUE;
+                for (long i = start; i < end; i++) {
+                    minSeed = Math.min(processSeedThroughAllIndexes(i), minSeed);
+                }
+                return minSeed;
+            }
+
+            long middle = start + (end - start) / 2;
+            MinimumSeedTask left = new MinimumSeedTask(start, middle);
+            left.fork();
+            long rightMinimum = new MinimumSeedTask(middle, end).compute();
+            return Math.min(left.join(), rightMinimum);
         }
-        return minSeed;
     }
 
     /**
@@ -242,33 +276,104 @@ public class SeedProcessor {
     }
 
     /**
-     * Finds the minimum seed in a range.
+     * Finds the location of a single seed.
      *
-     * @param range The range of seeds.
-     * @return The minimum seed in the range.
+     * @param seed The seed to look up.
+     * @return The location of the seed.
      */
-    long minimumSeedInRange(long[] range) {
-        // process all numbers in the range through minimumSeed() and return the smallest result
-        long minSeed = Long.MAX_VALUE;
-        for (long i = range[0]; i < range[0] + range[1]; i++) {
-            long currentSeed = processSeedThroughAllMaps(i, seedToSoilList, soilToFertilizerList, fertilizerToWaterList,
-                    waterToLightList, lightToTemperatureList, temperatureToHumidityList, humidityToLocationList);
-            minSeed = Math.min(currentSeed, minSeed);
+    public long locationOf(long seed) {
+        return getSeedToLocationMapping().map(seed);
+    }
+
+    /**
+     * Finds the locations of many seeds at once.
+     *
+     * @param seeds The seeds to look up.
+     * @return A new array holding the location of each seed, in the same order.
+     */
+    public long[] locationsOf(long[] seeds) {
+        long[] locations = new long[seeds.length];
+        translateBatch(seeds, locations);
+        return locations;
+    }
 
+    /**
+     * Translates an array of seeds to their locations. This is the batch form of locationOf(), meant for translating
+     * millions of seeds at a time: every seed goes through the merged seed-to-location mapping with a branch-free
+     * lookup, instead of through seven separate maps.
+     *
+     * @param in  The seeds to translate.
+     * @param out The array to write the locations to, at the same positions as their seeds. It must be at least as long
+     *            as in, and may be the same array.
+     * @throws IllegalArgumentException If out is shorter than in.
+     */
+    public void translateBatch(long[] in, long[] out) {
+        if (out.length < in.length) {
+            throw new IllegalArgumentException("Output array is shorter than the input array: " + out.length + " < "
+                    + in.length);
         }
-        return minSeed;
+        getSeedToLocationMapping().mapBatch(in, out, 0, in.length);
+    }
 
+    /**
+     * Finds the minimum location over a list of seed ranges, without visiting every seed in each range.
+     *
+     * @param ranges The seed ranges, where range[0] is the start of the range and range[1] is its length.
+     * @return The minimum location, or Long.MAX_VALUE if the ranges contain no seeds.
+     */
+    public long minLocation(List<long[]> ranges) {
+        ComposedMapping mapping = getSeedToLocationMapping();
+        long minLocation = Long.MAX_VALUE;
+        for (long[] range : ranges) {
+            minLocation = Math.min(mapping.minimumOver(range[0], range[1]), minLocation);
+        }
+        return minLocation;
     }
 
     /**
      * GETTERS
      */
     public long getMinSeedSingleSeeds() {
-        return minSeedSingleSeeds;
+        Long minSeed = minSeedSingleSeeds;
+        if (minSeed == null) {
+            minSeed = minimumSeedUsingComposedMapping(seeds);
+            minSeedSingleSeeds = minSeed;
+        }
+        return minSeed;
     }
 
+    /**
+     * Finds the minimum location over the seed ranges, with minLocation().
+     *
+     * @return The minimum location, or Long.MAX_VALUE if the ranges contain no seeds.
+     */
     public long getMinSeedUsingRange() {
-        return minSeedUsingRange;
+        Long minSeed = minSeedUsingRange;
+        if (minSeed == null) {
+            minSeed = minLocation(transformSeedsIntoRanges(seeds));
+            minSeedUsingRange = minSeed;
+        }
+        return minSeed;
+    }
+
+    /**
+     * Finds the minimum seed using seed ranges by checking every seed on several threads. This is much slower than
+     * getMinSeedUsingRange(), and is meant for rule sets where checking every seed is still required.
+     *
+     * @param parallelism The number of worker threads to use.
+     * @return The minimum seed, or Long.MAX_VALUE if the ranges contain no seeds.
+     */
+    public long getMinSeedUsingRangeParallel(int parallelism) {
+        return minimumSeedUsingSeedRangesParallel(seeds, parallelism);
+    }
+
+    public ComposedMapping getSeedToLocationMapping() {
+        ComposedMapping mapping = seedToLocationMapping;
+        if (mapping == null) {
+            mapping = buildSeedToLocationMapping();
+            seedToLocationMapping = mapping;
+        }
+        return mapping;
     }
 
 }
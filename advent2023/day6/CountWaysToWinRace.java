@@ -43,27 +43,7 @@ public class CountWaysToWinRace {
      */
     public static ArrayList<long[]> parseRaceFileAsSingleRace(String filePath) throws IOException {
         ArrayList<long[]> timeDistanceList = new ArrayList<>();
-        StringBuilder time = new StringBuilder();
-        StringBuilder distance = new StringBuilder();
-
-        try (BufferedReader reader = new BufferedReader(new FileReader(filePath))) {
-            String line;
-            while ((line = reader.readLine()) != null) {
-                String[] parts = line.split("\\s+");
-                if (parts[0].equals("Time:")) {
-                    String[] distanceParts = reader.readLine().split("\\s+");
-                    for (int i = 1; i < parts.length; i++) {
-                        time.append(parts[i]);
-                        distance.append(distanceParts[i]);
-
-                    }
-                }
-            }
-            timeDistanceList.add(new long[]{
-                    Long.parseLong(String.valueOf(time)),
-                    Long.parseLong(String.valueOf(distance))
-            });
-        }
+        timeDistanceList.add(RaceBatch.parse(filePath).singleRace());
         return timeDistanceList;
     }
 
@@ -74,25 +54,97 @@ public class CountWaysToWinRace {
      * @return The number of ways to win the race.
      */
     public static long countWaysToWin(long[] input) {
-        long T = input[0];
-        long recordDistance = input[1];
-        double discriminant = Math.pow(T, 2) - 4 * recordDistance;
-        if (discriminant < 0) {
+        return countWaysToWin(input[0], input[1]);
+    }
+
+    /**
+     * Counts the number of ways to win a race: the number of whole hold times x from 0 to the race time T for which
+     * the boat travels x * (T - x), which is more than the record distance.
+     * <p>
+     * The distances are symmetric around T / 2 and increase up to it, so the winning hold times are the range from
+     * the first winning hold time x0 to T - x0. x0 is estimated from the quadratic formula in double, and the estimate
+     * is then corrected with exact comparisons: the distance for a hold time is compared with the record as a 128-bit
+     * product using Math.multiplyHigh, so the result is exact for every long time and distance, however far the
+     * estimate is off. Nothing is allocated.
+     *
+     * @param time           The race time T.
+     * @param recordDistance The record distance to beat.
+     * @return The number of ways to win the race, 0 if the time is negative.
+     * @throws ArithmeticException If the count does not fit in a long, which only happens when the time is
+     *                             Long.MAX_VALUE and the record is negative.
+     */
+    public static long countWaysToWin(long time, long recordDistance) {
+        if (time < 0) {
             return 0;
         }
+        long half = time / 2;
+        if (!beatsRecord(half, time, recordDistance)) {
+            return 0;
+        }
+        long firstWin = firstWinningHoldTime(time, recordDistance, half);
+        return Math.addExact(time - 2 * firstWin, 1);
+    }
 
-        double sqrtDiscriminant = Math.sqrt(discriminant);
-        double root1 = (T + sqrtDiscriminant) / 2;
-        double root2 = (T - sqrtDiscriminant) / 2;
-
-        long lowerBound = (long) Math.max(Math.ceil(root2), 1);
-        long upperBound = (long) Math.min(Math.floor(root1), T - 1);
+    /**
+     * Finds the shortest hold time that beats the record, given that holding for half the race does.
+     */
+    private static long firstWinningHoldTime(long time, long recordDistance, long half) {
+        if (recordDistance < 0) {
+            return 0;
+        }
+        // smaller root of x * (T - x) = D, written to avoid subtracting nearly equal numbers
+        double root = 2.0 * recordDistance / (time + Math.sqrt((double) time * time - 4.0 * recordDistance));
+        long guess = Math.max(0, Math.min(half, (long) Math.ceil(root)));
 
-        if (upperBound >= lowerBound) {
-            return upperBound - lowerBound + 1;
+        // gallop away from the guess until the first win is bracketed, with lose < firstWin <= win
+        long lose;
+        long win;
+        long step = 1;
+        if (beatsRecord(guess, time, recordDistance)) {
+            win = guess;
+            lose = guess - 1;
+            while (lose >= 0 && beatsRecord(lose, time, recordDistance)) {
+                win = lose;
+                step <<= 1;
+                lose = win - step;
+            }
+            lose = Math.max(lose, -1);
         } else {
-            return 0;
+            lose = guess;
+            win = guess + 1;
+            while (!beatsRecord(win, time, recordDistance)) {
+                lose = win;
+                step <<= 1;
+                win = half - lose <= step ? half : lose + step;
+            }
         }
+
+        while (win - lose > 1) {
+            long middle = lose + (win - lose) / 2;
+            if (beatsRecord(middle, time, recordDistance)) {
+                win = middle;
+            } else {
+                lose = middle;
+            }
+        }
+        return win;
+    }
+
+    /**
+     * Checks whether holding the button for a given time beats the record, comparing the exact 128-bit distance.
+     *
+     * @param holdTime       The hold time, from 0 to the race time.
+     * @param time           The race time.
+     * @param recordDistance The record distance.
+     * @return true if holdTime * (time - holdTime) is more than recordDistance.
+     */
+    private static boolean beatsRecord(long holdTime, long time, long recordDistance) {
+        long speed = holdTime;
+        long travelTime = time - holdTime;
+        // both factors are at least 0, so the product is too, and it only fits in a long if the high half is 0
+        long high = Math.multiplyHigh(speed, travelTime);
+        long low = speed * travelTime;
+        return high != 0 || recordDistance < 0 || Long.compareUnsigned(low, recordDistance) > 0;
     }
 
 }
@@ -1,34 +1,30 @@
 package advent2023.day6;
 
 import java.io.IOException;
-import java.util.ArrayList;
+import java.math.BigInteger;
 
 import static advent2023.day6.CountWaysToWinRace.*;
 
 public class Main {
 
     public static void main(String[] args) {
-        ArrayList<long[]> races1 = new ArrayList<>();
-        ArrayList<long[]> races2 = new ArrayList<>();
-        long solution1 = 1;
+        RaceBatch races = RaceBatch.of(new long[0], new long[0]);
         long solution2 = 0;
 
         try {
-            races1 = parseRaceFile("advent2023/day6/input.txt");
-            races2 = parseRaceFileAsSingleRace("advent2023/day6/input.txt");
+            // one read of the file gives both the separate races and the single race
+            races = RaceBatch.parse("advent2023/day6/input.txt");
 
         } catch (IOException e) {
             System.out.println("Error reading file");
         }
 
         // part 1 solution
-        for (long[] race : races1) {
-            solution1 *= countWaysToWin(race);
-        }
+        BigInteger solution1 = races.evaluate().product();
 
         // part 2 solution
-        for (long[] race : races2) {
-            solution2 = countWaysToWin(race);
+        if (races.size() > 0) {
+            solution2 = countWaysToWin(races.singleRace());
         }
 
         System.out.println("Part 1 solution: " + solution1);
@@ -0,0 +1,459 @@
+package advent2023.day6;
+
+import advent2023.utilities.MappedLineReader;
+
+import java.io.File;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * A batch of races held as two parallel long arrays of race times and record distances, so that millions of races
+ * cost two longs each instead of an array object each. A race file is parsed straight into the arrays by scanning its
+ * bytes, and the whole batch is evaluated in one pass, optionally on several threads, giving the number of ways to win
+ * each race and the product of those numbers. Instances are immutable and can be shared between threads.
+ * <p>
+ * The same parse also reads the file as a single race, whose time and record distance are all the times and all the
+ * distances written one after another. Those are built up number by number while the file is scanned, so a caller
+ * that needs both readings reads the file only once.
+ */
+public final class RaceBatch {
+
+    private static final int PARALLEL_CHUNK_SIZE = 1 << 14;
+
+    private final long[] times;
+    private final long[] distances;
+    private final Concatenation singleTime;
+    private final Concatenation singleDistance;
+
+    private RaceBatch(long[] times, long[] distances, Concatenation singleTime, Concatenation singleDistance) {
+        this.times = times;
+        this.distances = distances;
+        this.singleTime = singleTime;
+        this.singleDistance = singleDistance;
+    }
+
+    /**
+     * Creates a batch from race times and record distances.
+     *
+     * @param times     The time of each race.
+     * @param distances The record distance of each race, in the same order.
+     * @return The batch, holding copies of the arrays.
+     * @throws IllegalArgumentException If the arrays have different lengths.
+     */
+    public static RaceBatch of(long[] times, long[] distances) {
+        if (times.length != distances.length) {
+            throw new IllegalArgumentException(times.length + " times but " + distances.length + " distances");
+        }
+        Concatenation singleTime = new Concatenation();
+        Concatenation singleDistance = new Concatenation();
+        for (int i = 0; i < times.length; i++) {
+            singleTime.append(times[i]);
+            singleDistance.append(distances[i]);
+        }
+        return new RaceBatch(times.clone(), distances.clone(), singleTime, singleDistance);
+    }
+
+    /**
+     * Parses a race file, where each line starting with "Time:" lists race times and is followed by a line listing the
+     * record distances of the same races. The numbers are read digit by digit from the mapped file, with no regular
+     * expression and no String per number.
+     *
+     * @param filePath The location of the race file.
+     * @return The races in the file, in the order they appear.
+     * @throws IOException              If an I/O error occurs.
+     * @throws IllegalArgumentException If a distance line is missing or lists a different number of races, or a value
+     *                                  is not a number that fits in a long.
+     */
+    public static RaceBatch parse(String filePath) throws IOException {
+        LongColumn times = new LongColumn();
+        LongColumn distances = new LongColumn();
+        Concatenation singleTime = new Concatenation();
+        Concatenation singleDistance = new Concatenation();
+
+        try (MappedLineReader reader = MappedLineReader.open(new File(filePath))) {
+            while (reader.nextLine()) {
+                ByteBuffer buffer = reader.buffer();
+                int start = reader.lineOffset();
+                int end = start + reader.lineLength();
+                if (!startsWithLabel(buffer, start, end, "Time:")) {
+                    continue;
+                }
+                int raceCount = times.size;
+                parseNumbers(buffer, start + "Time:".length(), end, times, singleTime);
+                if (!reader.nextLine()) {
+                    throw new IllegalArgumentException("Time line is not followed by a distance line");
+                }
+                start = reader.lineOffset();
+                end = start + reader.lineLength();
+                parseNumbers(reader.buffer(), skipLabel(reader.buffer(), start, end), end, distances, singleDistance);
+                if (times.size != distances.size) {
+                    throw new IllegalArgumentException((times.size - raceCount) + " times but "
+                            + (distances.size - raceCount) + " distances");
+                }
+            }
+        }
+        return new RaceBatch(times.toArray(), distances.toArray(), singleTime, singleDistance);
+    }
+
+    /**
+     * @return The number of races in the batch.
+     */
+    public int size() {
+        return times.length;
+    }
+
+    /**
+     * Reads the batch as a single race, the way part 2 of the puzzle does: the time is all the race times written one
+     * after another, and the record distance all the record distances. Digits are kept as they were written in the
+     * file, so a number with leading zeros adds all of its digits.
+     *
+     * @return The time and record distance of the single race.
+     * @throws IllegalArgumentException If the batch is empty, has a negative number, or the joined digits do not fit
+     *                                  in a long.
+     */
+    public long[] singleRace() {
+        if (times.length == 0) {
+            throw new IllegalArgumentException("No races to read as a single race");
+        }
+        return new long[]{singleTime.value("time"), singleDistance.value("distance")};
+    }
+
+    /**
+     * Evaluates every race in the batch on the calling thread.
+     *
+     * @return The number of ways to win each race and their product.
+     */
+    public Result evaluate() {
+        long[] counts = new long[times.length];
+        Product product = countRange(counts, 0, times.length);
+        return new Result(counts, product);
+    }
+
+    /**
+     * Evaluates every race in the batch, spread over several threads. Gives the same result as evaluate().
+     *
+     * @param parallelism The number of worker threads to use.
+     * @return The number of ways to win each race and their product.
+     */
+    public Result evaluate(int parallelism) {
+        if (parallelism <= 1 || times.length <= PARALLEL_CHUNK_SIZE) {
+            return evaluate();
+        }
+        long[] counts = new long[times.length];
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            Product product = pool.invoke(new CountTask(counts, 0, times.length));
+            return new Result(counts, product);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Counts the ways to win the races from start up to (but not including) end, storing each count and returning
+     * their product.
+     */
+    private Product countRange(long[] counts, int start, int end) {
+        Product product = new Product();
+        for (int i = start; i < end; i++) {
+            counts[i] = CountWaysToWinRace.countWaysToWin(times[i], distances[i]);
+            product.multiply(counts[i]);
+        }
+        return product;
+    }
+
+    /**
+     * Counts the ways to win the races from a start (inclusive) to an end (exclusive) race, splitting the work in half
+     * until each part is at most PARALLEL_CHUNK_SIZE races long.
+     */
+    private final class CountTask extends RecursiveTask<Product> {
+        private static final long serialVersionUID = 1L;
+
+        private final long[] counts;
+        private final int start;
+        private final int end;
+
+        CountTask(long[] counts, int start, int end) {
+            this.counts = counts;
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        protected Product compute() {
+            if (end - start <= PARALLEL_CHUNK_SIZE) {
+                return countRange(counts, start, end);
+            }
+            int middle = (start + end) >>> 1;
+            CountTask left = new CountTask(counts, start, middle);
+            left.fork();
+            Product rightProduct = new CountTask(counts, middle, end).compute();
+            Product product = left.join();
+            product.multiply(rightProduct);
+            return product;
+        }
+    }
+
+    /**
+     * The result of evaluating a batch: the number of ways to win each race and the product of those numbers.
+     */
+    public static final class Result {
+        private final long[] counts;
+        private final Product product;
+
+        private Result(long[] counts, Product product) {
+            this.counts = counts;
+            this.product = product;
+        }
+
+        /**
+         * @return The number of ways to win each race, in batch order.
+         */
+        public long[] counts() {
+            return counts.clone();
+        }
+
+        /**
+         * @param race The position of a race in the batch.
+         * @return The number of ways to win that race.
+         */
+        public long count(int race) {
+            return counts[race];
+        }
+
+        /**
+         * @return true if the product of the counts fits in a long.
+         */
+        public boolean productFitsInLong() {
+            return product.fitsInLong();
+        }
+
+        /**
+         * @return The product of the counts.
+         * @throws ArithmeticException If the product does not fit in a long; use product() instead.
+         */
+        public long productAsLong() {
+            if (!product.fitsInLong()) {
+                throw new ArithmeticException("Product of the ways to win overflows a long");
+            }
+            return product.zero ? 0 : product.value;
+        }
+
+        /**
+         * @return The exact product of the counts.
+         */
+        public BigInteger product() {
+            return product.exact();
+        }
+    }
+
+    /**
+     * A running product kept as a long while it fits, checked with Math.multiplyHigh so that the common case does not
+     * go through an exception the way Math.multiplyExact would. When a factor would overflow it, the partial product
+     * so far is set aside and a new one started. The set-aside partials are only multiplied together as BigIntegers
+     * when the exact product is asked for, paired up in a balanced tree so that the work does not grow with the square
+     * of the number of races.
+     */
+    private static final class Product {
+        private long value = 1;
+        private boolean zero;
+        private final LongColumn overflowed = new LongColumn();
+
+        void multiply(long factor) {
+            if (zero) {
+                return;
+            }
+            if (factor == 0) {
+                zero = true;
+                return;
+            }
+            long high = Math.multiplyHigh(value, factor);
+            long low = value * factor;
+            if (high == 0 && low >= 0) {
+                value = low;
+            } else {
+                overflowed.add(value);
+                value = factor;
+            }
+        }
+
+        void multiply(Product other) {
+            if (other.zero) {
+                zero = true;
+            }
+            if (zero) {
+                return;
+            }
+            for (int i = 0; i < other.overflowed.size; i++) {
+                overflowed.add(other.overflowed.values[i]);
+            }
+            multiply(other.value);
+        }
+
+        boolean fitsInLong() {
+            // counts are never negative, so a partial that overflowed can only have grown since
+            return zero || overflowed.size == 0;
+        }
+
+        BigInteger exact() {
+            if (zero) {
+                return BigInteger.ZERO;
+            }
+            if (overflowed.size == 0) {
+                return BigInteger.valueOf(value);
+            }
+            return multiplyRange(overflowed.values, 0, overflowed.size).multiply(BigInteger.valueOf(value));
+        }
+
+        private static BigInteger multiplyRange(long[] factors, int start, int end) {
+            if (end - start == 1) {
+                return BigInteger.valueOf(factors[start]);
+            }
+            int middle = (start + end) >>> 1;
+            return multiplyRange(factors, start, middle).multiply(multiplyRange(factors, middle, end));
+        }
+    }
+
+    /**
+     * The digits of a sequence of numbers written one after another, built up as acc * 10^digits + n for each number
+     * n, with the overflow checked before each step. Once a number is negative or the value would overflow, the
+     * concatenation is marked invalid instead of failing the parse, since the batch itself may still be fine.
+     */
+    private static final class Concatenation {
+        private static final long[] POWERS_OF_TEN = new long[19];
+
+        static {
+            POWERS_OF_TEN[0] = 1;
+            for (int i = 1; i < POWERS_OF_TEN.length; i++) {
+                POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10;
+            }
+        }
+
+        private long value;
+        private String invalidReason;
+
+        void append(long number) {
+            int digits = 1;
+            while (digits < POWERS_OF_TEN.length && number >= POWERS_OF_TEN[digits]) {
+                digits++;
+            }
+            append(number, digits);
+        }
+
+        /**
+         * Appends a number written with the given number of digits, which may be more than it needs when the number
+         * has leading zeros.
+         */
+        void append(long number, int digits) {
+            if (invalidReason != null) {
+                return;
+            }
+            if (number < 0) {
+                invalidReason = "has a negative number";
+            } else if (value == 0) {
+                // nothing to shift, so only the number itself has to fit
+                value = number;
+            } else if (digits >= POWERS_OF_TEN.length || value > (Long.MAX_VALUE - number) / POWERS_OF_TEN[digits]) {
+                invalidReason = "does not fit in a long";
+            } else {
+                value = value * POWERS_OF_TEN[digits] + number;
+            }
+        }
+
+        long value(String name) {
+            if (invalidReason != null) {
+                throw new IllegalArgumentException("Single race " + name + " " + invalidReason);
+            }
+            return value;
+        }
+    }
+
+    /**
+     * Growable long array used while parsing.
+     */
+    private static final class LongColumn {
+        private long[] values = new long[16];
+        private int size;
+
+        void add(long value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+
+        long[] toArray() {
+            return Arrays.copyOf(values, size);
+        }
+    }
+
+    private static boolean startsWithLabel(ByteBuffer buffer, int start, int end, String label) {
+        if (end - start < label.length()) {
+            return false;
+        }
+        for (int i = 0; i < label.length(); i++) {
+            if (buffer.get(start + i) != label.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return The position just after the first ':' of the line, or the start of the line if it has none.
+     */
+    private static int skipLabel(ByteBuffer buffer, int start, int end) {
+        for (int i = start; i < end; i++) {
+            if (buffer.get(i) == ':') {
+                return i + 1;
+            }
+        }
+        return start;
+    }
+
+    /**
+     * Adds the whitespace-separated numbers between start and end to a column, and appends their digits to a
+     * concatenation.
+     */
+    private static void parseNumbers(ByteBuffer buffer, int start, int end, LongColumn column,
+                                     Concatenation concatenation) {
+        int i = start;
+        while (true) {
+            while (i < end && (buffer.get(i) == ' ' || buffer.get(i) == '\t')) {
+                i++;
+            }
+            if (i >= end) {
+                return;
+            }
+            int tokenStart = i;
+            boolean negative = buffer.get(i) == '-';
+            int digitsStart = negative ? i + 1 : i;
+            // accumulate as a negative number, which has room for Long.MIN_VALUE
+            long value = 0;
+            boolean valid = true;
+            for (i = digitsStart; i < end && buffer.get(i) != ' ' && buffer.get(i) != '\t'; i++) {
+                int digit = buffer.get(i) - '0';
+                valid &= digit >= 0 && digit <= 9 && value >= (Long.MIN_VALUE + digit) / 10;
+                value = value * 10 - digit;
+            }
+            if (!valid || i == digitsStart || (!negative && value == Long.MIN_VALUE)) {
+                throw new IllegalArgumentException("Not a number that fits in a long: "
+                        + tokenText(buffer, tokenStart, end));
+            }
+            column.add(negative ? value : -value);
+            concatenation.append(negative ? value : -value, i - digitsStart);
+        }
+    }
+
+    private static String tokenText(ByteBuffer buffer, int start, int end) {
+        StringBuilder token = new StringBuilder();
+        for (int i = start; i < end && buffer.get(i) != ' ' && buffer.get(i) != '\t'; i++) {
+            token.append((char) (buffer.get(i) & 0xFF));
+        }
+        return token.toString();
+    }
+}
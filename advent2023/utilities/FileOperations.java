@@ -2,15 +2,29 @@ package advent2023.utilities;
 
 import java.io.BufferedReader;
 import java.io.File;
+import java.io.FileNotFoundException;
 import java.io.FileReader;
 import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.BinaryOperator;
+import java.util.function.Supplier;
+import java.util.stream.Collector;
 
 public class FileOperations {
 
     /**
      * This method reads a text file and returns its content as an ArrayList of Strings, where each String represents a
-     * line in the file.
+     * line in the file. For large files, MappedLineReader reads the lines without creating a String for each one.
      *
      * @param inputFile The File object representing the text file to be read.
      * @return An ArrayList of Strings, where each String is a line from the input file.
@@ -18,15 +32,191 @@ public class FileOperations {
     public static ArrayList<String> fileToList(File inputFile) {
         ArrayList<String> fileLines = new ArrayList<>();
 
-        try {
-            BufferedReader br = new BufferedReader(new FileReader(inputFile));
+        try (BufferedReader br = new BufferedReader(new FileReader(inputFile))) {
             String line;
             while ((line = br.readLine()) != null) {
                 fileLines.add(line);
             }
-        } catch (IOException e) {
+        } catch (FileNotFoundException e) {
             System.out.println("Error: file not found -> " + e.getMessage());
+        } catch (IOException e) {
+            System.out.println("Error: could not read file -> " + e.getMessage());
         }
         return fileLines;
     }
+
+    /**
+     * This method reads a text file one line at a time and passes each line to the given consumer as soon as it is
+     * read. Unlike fileToList(), only the current line is held in memory, so memory use does not grow with the size of
+     * the file.
+     *
+     * @param inputFile The File object representing the text file to be read.
+     * @param consumer  The consumer to pass each line to, in the order they appear in the file.
+     * @throws IOException If the file cannot be found or read.
+     */
+    public static void forEachLine(File inputFile, LineConsumer consumer) throws IOException {
+        try (BufferedReader br = new BufferedReader(new FileReader(inputFile))) {
+            String line;
+            while ((line = br.readLine()) != null) {
+                consumer.accept(line);
+            }
+        }
+    }
+
+    /**
+     * This method splits a text file into roughly equal chunks of bytes, each starting at the beginning of a line, and
+     * reduces the lines of each chunk on its own worker thread. Each worker reads its chunk through its own
+     * MappedLineReader, so memory use per worker does not grow with the size of the file. The partial results are
+     * combined in file order with the collector's combiner, so a combiner that is associative gives the same result
+     * as reading the file on a single thread.
+     *
+     * @param inputFile   The File object representing the text file to be read.
+     * @param parallelism The number of chunks, and worker threads, to split the file into.
+     * @param collector   The collector used to reduce the lines of each chunk and to combine the chunk results.
+     * @param <A>         The collector's intermediate result type.
+     * @param <R>         The collector's final result type.
+     * @return The combined result for all the lines in the file.
+     * @throws IOException If the file cannot be found or read.
+     */
+    public static <A, R> R reduceLinesInParallel(File inputFile, int parallelism, Collector<String, A, R> collector)
+            throws IOException {
+        A result = reduceChunks(inputFile, parallelism, (start, end) -> reduceChunk(inputFile, start, end, collector),
+                collector.combiner());
+        return collector.finisher().apply(result);
+    }
+
+    /**
+     * This method does the same as reduceLinesInParallel(), but hands each line to the accumulator as a range of bytes
+     * in a MappedLineReader's buffer instead of as a String, so no object is created per line.
+     *
+     * @param inputFile   The File object representing the text file to be read.
+     * @param parallelism The number of chunks, and worker threads, to split the file into.
+     * @param supplier    Creates the container that each chunk's lines are accumulated into.
+     * @param accumulator Adds one line to a container.
+     * @param combiner    Combines the containers of two neighbouring chunks, earlier chunk first.
+     * @param <A>         The container type.
+     * @return The combined container for all the lines in the file.
+     * @throws IOException If the file cannot be found or read.
+     */
+    public static <A> A reduceMappedLinesInParallel(File inputFile, int parallelism, Supplier<A> supplier,
+                                                    MappedLineAccumulator<A> accumulator, BinaryOperator<A> combiner)
+            throws IOException {
+        return reduceChunks(inputFile, parallelism, (start, end) -> {
+            A container = supplier.get();
+            try (MappedLineReader reader = MappedLineReader.open(inputFile, start)) {
+                while (reader.filePosition() < end && reader.nextLine()) {
+                    accumulator.accept(container, reader.buffer(), reader.lineOffset(), reader.lineLength());
+                }
+            }
+            return container;
+        }, combiner);
+    }
+
+    /**
+     * Reduces each newline-aligned chunk of a file on its own worker thread and combines the results in file order.
+     */
+    private static <A> A reduceChunks(File inputFile, int parallelism, ChunkReducer<A> chunkReducer,
+                                      BinaryOperator<A> combiner) throws IOException {
+        long[] chunkStarts = splitIntoChunks(inputFile, parallelism);
+
+        List<Callable<A>> tasks = new ArrayList<>();
+        for (int i = 0; i < parallelism; i++) {
+            long start = chunkStarts[i];
+            long end = chunkStarts[i + 1];
+            tasks.add(() -> chunkReducer.reduce(start, end));
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(parallelism);
+        try {
+            A result = null;
+            for (Future<A> future : executor.invokeAll(tasks)) {
+                A chunkResult = future.get();
+                result = result == null ? chunkResult : combiner.apply(result, chunkResult);
+            }
+            return result;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while reading " + inputFile);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException ioException) {
+                throw ioException;
+            }
+            throw new IOException("Error: could not read file -> " + inputFile, e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Reduces the lines that start from one byte position up to (but not including) another.
+     */
+    @FunctionalInterface
+    private interface ChunkReducer<A> {
+        A reduce(long start, long end) throws IOException;
+    }
+
+    /**
+     * Finds the byte positions where each chunk of a file starts. Each position is moved forward to the start of the
+     * next line, so no line is split between two chunks. Chunks can be empty when the file has fewer lines than
+     * chunks.
+     *
+     * @param inputFile  The File object representing the text file to be split.
+     * @param chunkCount The number of chunks to split the file into.
+     * @return chunkCount + 1 positions, where chunk i covers the bytes from position i up to position i + 1.
+     * @throws IOException If the file cannot be found or read.
+     */
+    static long[] splitIntoChunks(File inputFile, int chunkCount) throws IOException {
+        if (chunkCount < 1) {
+            throw new IllegalArgumentException("Chunk count must be at least 1: " + chunkCount);
+        }
+        try (FileChannel channel = FileChannel.open(inputFile.toPath(), StandardOpenOption.READ)) {
+            long size = channel.size();
+            long[] chunkStarts = new long[chunkCount + 1];
+            chunkStarts[chunkCount] = size;
+            ByteBuffer buffer = ByteBuffer.allocate(8192);
+
+            for (int i = 1; i < chunkCount; i++) {
+                long position = Math.max(size / chunkCount * i, chunkStarts[i - 1]);
+                chunkStarts[i] = position == 0 ? 0 : nextLineStart(channel, position, size, buffer);
+            }
+            return chunkStarts;
+        }
+    }
+
+    /**
+     * Finds the first line that starts at or after a byte position.
+     */
+    private static long nextLineStart(FileChannel channel, long position, long size, ByteBuffer buffer)
+            throws IOException {
+        // start one byte early, so a position that is already at the start of a line stays where it is
+        long readPosition = position - 1;
+        while (readPosition < size) {
+            buffer.clear();
+            int read = channel.read(buffer, readPosition);
+            if (read <= 0) {
+                break;
+            }
+            for (int i = 0; i < read; i++) {
+                if (buffer.get(i) == '\n') {
+                    return readPosition + i + 1;
+                }
+            }
+            readPosition += read;
+        }
+        return size;
+    }
+
+    /**
+     * Reduces the lines that start between two byte positions of a file.
+     */
+    private static <A, R> A reduceChunk(File inputFile, long start, long end, Collector<String, A, R> collector)
+            throws IOException {
+        A container = collector.supplier().get();
+        try (MappedLineReader reader = MappedLineReader.open(inputFile, start)) {
+            while (reader.filePosition() < end && reader.nextLine()) {
+                collector.accumulator().accept(container, reader.lineAsString());
+            }
+        }
+        return container;
+    }
 }
@@ -0,0 +1,16 @@
+package advent2023.utilities;
+
+/**
+ * A callback that receives the lines of a file one at a time, in order, as they are read by
+ * FileOperations.forEachLine().
+ */
+@FunctionalInterface
+public interface LineConsumer {
+
+    /**
+     * Handles one line of the file.
+     *
+     * @param line The line, without its line ending.
+     */
+    void accept(String line);
+}
@@ -0,0 +1,24 @@
+package advent2023.utilities;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A callback that adds the lines of a file to a container one at a time, as they are read by
+ * FileOperations.reduceMappedLinesInParallel(). Each line is given as a range of bytes in a MappedLineReader's buffer,
+ * which is only valid for the duration of the call.
+ *
+ * @param <A> The container type.
+ */
+@FunctionalInterface
+public interface MappedLineAccumulator<A> {
+
+    /**
+     * Adds one line to a container.
+     *
+     * @param container The container for the chunk the line is in.
+     * @param buffer    The buffer holding the line.
+     * @param offset    The position of the first byte of the line in the buffer.
+     * @param length    The number of bytes in the line, without its line ending.
+     */
+    void accept(A container, ByteBuffer buffer, int offset, int length);
+}
@@ -0,0 +1,220 @@
+package advent2023.utilities;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * The MappedLineReader class reads the lines of a text file through a memory-mapped view of the file, without creating
+ * a String for each line. After each successful call to nextLine(), the current line is available as a range of bytes
+ * in buffer(), starting at lineOffset() and lineLength() bytes long. Lines end at '\n', and a '\r' just before it is
+ * not part of the line.
+ * <p>
+ * Files are mapped one region at a time, so files larger than a single mapping (2 GB) can be read as long as no single
+ * line is longer than a region. The reader must be closed when it is no longer needed, preferably with
+ * try-with-resources. A reader is not thread-safe, and the buffer returned by buffer() is only valid until the next
+ * call to nextLine().
+ */
+public final class MappedLineReader implements AutoCloseable {
+
+    private static final long DEFAULT_REGION_SIZE = 1L << 30;
+
+    // SWAR masks used to find a '\n' byte in 8 bytes at a time
+    private static final long NEWLINES = 0x0A0A0A0A0A0A0A0AL;
+    private static final long LOW_SEVEN_BITS = 0x7F7F7F7F7F7F7F7FL;
+
+    private final FileChannel channel;
+    private final long fileSize;
+    private final long regionSize;
+
+    private MappedByteBuffer region;
+    private long regionStart;
+    private int position;
+
+    private int lineOffset;
+    private int lineLength;
+    private boolean lineTerminated;
+
+    private MappedLineReader(FileChannel channel, long startPosition, long regionSize) throws IOException {
+        this.channel = channel;
+        this.fileSize = channel.size();
+        this.regionSize = regionSize;
+        if (startPosition < 0 || startPosition > fileSize) {
+            throw new IOException("Start position " + startPosition + " is outside the file, which has " + fileSize
+                    + " bytes");
+        }
+        mapRegion(startPosition);
+    }
+
+    /**
+     * Opens a file for reading from its first byte.
+     *
+     * @param inputFile The File object representing the text file to be read.
+     * @return A reader positioned before the first line of the file.
+     * @throws IOException If the file cannot be opened or mapped.
+     */
+    public static MappedLineReader open(File inputFile) throws IOException {
+        return open(inputFile, 0);
+    }
+
+    /**
+     * Opens a file for reading from the given byte position, which should be the start of a line.
+     *
+     * @param inputFile     The File object representing the text file to be read.
+     * @param startPosition The byte position in the file to start reading at.
+     * @return A reader positioned before the line that starts at startPosition.
+     * @throws IOException If the file cannot be opened or mapped, or startPosition is outside the file.
+     */
+    public static MappedLineReader open(File inputFile, long startPosition) throws IOException {
+        FileChannel channel = FileChannel.open(inputFile.toPath(), StandardOpenOption.READ);
+        try {
+            return new MappedLineReader(channel, startPosition, DEFAULT_REGION_SIZE);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Moves to the next line of the file.
+     *
+     * @return true if there is a next line, false if the end of the file has been reached.
+     * @throws IOException If the next part of the file cannot be mapped, or a line is longer than a mapped region.
+     */
+    public boolean nextLine() throws IOException {
+        int limit = region.limit();
+        if (position >= limit && regionStart + limit >= fileSize) {
+            return false;
+        }
+
+        int scanned = position;
+        int newline;
+        while ((newline = findNewline(scanned, limit)) < 0) {
+            if (regionStart + limit >= fileSize) {
+                // last line of the file, with no '\n' after it
+                setLine(position, limit, false);
+                return true;
+            }
+            // the line runs past the end of this region, so map a new region starting at the line
+            int alreadyScanned = limit - position;
+            if (position == 0) {
+                throw new IOException("Line starting at byte " + regionStart + " is longer than " + regionSize
+                        + " bytes");
+            }
+            mapRegion(regionStart + position);
+            limit = region.limit();
+            scanned = alreadyScanned;
+        }
+        setLine(position, newline, true);
+        return true;
+    }
+
+    /**
+     * @return The buffer holding the current line. Only valid until the next call to nextLine().
+     */
+    public ByteBuffer buffer() {
+        return region;
+    }
+
+    /**
+     * @return The position of the first byte of the current line in buffer().
+     */
+    public int lineOffset() {
+        return lineOffset;
+    }
+
+    /**
+     * @return The number of bytes in the current line, not counting the line ending.
+     */
+    public int lineLength() {
+        return lineLength;
+    }
+
+    /**
+     * @param index The position of a byte within the current line, from 0 to lineLength() - 1.
+     * @return The byte at that position.
+     */
+    public byte byteAt(int index) {
+        return region.get(lineOffset + index);
+    }
+
+    /**
+     * @return true if the current line ended with '\n', false if it was the last line of the file and had no ending.
+     */
+    public boolean lineTerminated() {
+        return lineTerminated;
+    }
+
+    /**
+     * @return The byte position in the file just after the current line and its line ending. Reading can continue
+     * from here with open(File, long).
+     */
+    public long filePosition() {
+        return regionStart + position;
+    }
+
+    /**
+     * Decodes the current line as a UTF-8 String. This allocates, and is meant for the rare lines that need it.
+     *
+     * @return The current line as a String.
+     */
+    public String lineAsString() {
+        byte[] bytes = new byte[lineLength];
+        region.get(lineOffset, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private void mapRegion(long start) throws IOException {
+        long size = Math.min(regionSize, fileSize - start);
+        region = channel.map(FileChannel.MapMode.READ_ONLY, start, size);
+        regionStart = start;
+        position = 0;
+    }
+
+    private void setLine(int start, int end, boolean terminated) {
+        lineOffset = start;
+        lineLength = end - start;
+        if (terminated && lineLength > 0 && region.get(end - 1) == '\r') {
+            lineLength--;
+        }
+        lineTerminated = terminated;
+        position = terminated ? end + 1 : end;
+    }
+
+    /**
+     * Finds the next '\n' in the current region, checking 8 bytes at a time where possible.
+     *
+     * @param from  The position to start searching at.
+     * @param limit The position to stop searching at.
+     * @return The position of the '\n', or -1 if there is none before limit.
+     */
+    private int findNewline(int from, int limit) {
+        int i = from;
+        for (; i + Long.BYTES <= limit; i += Long.BYTES) {
+            long word = region.getLong(i) ^ NEWLINES;
+            // high bit of each byte is set only where that byte of word is zero, i.e. where the input had '\n'
+            long found = ~(((word & LOW_SEVEN_BITS) + LOW_SEVEN_BITS) | word | LOW_SEVEN_BITS);
+            if (found != 0) {
+                // in big-endian order the first byte in the file is the most significant one
+                return i + ((region.order() == ByteOrder.BIG_ENDIAN
+                        ? Long.numberOfLeadingZeros(found) : Long.numberOfTrailingZeros(found)) >>> 3);
+            }
+        }
+        for (; i < limit; i++) {
+            if (region.get(i) == '\n') {
+                return i;
+            }
+        }
+        return -1;
+    }
+}